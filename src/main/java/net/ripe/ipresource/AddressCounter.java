@@ -0,0 +1,136 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+
+/**
+ * Accumulates the number of ASNs and addresses in ranges without {@code BigInteger} arithmetic. ASN and
+ * IPv4 counts fit in a long. IPv6 counts are added as unsigned 128-bit values in two longs, with a separate
+ * count of overflows beyond 128 bits.
+ */
+final class AddressCounter {
+
+    private long count;
+    private long ipv6High;
+    private long ipv6Low;
+    private long ipv6Overflow;
+
+    /**
+     * Adds the size of the range from start to end, which must have the same type.
+     */
+    void add(UniqueIpResource start, UniqueIpResource end) {
+        if (start instanceof Ipv6Address) {
+            Ipv6Address from = (Ipv6Address) start;
+            Ipv6Address to = (Ipv6Address) end;
+            addIpv6(from.highBits(), from.lowBits(), to.highBits(), to.lowBits());
+        } else {
+            count += value(end) - value(start) + 1;
+        }
+    }
+
+    /**
+     * Adds the size of the IPv6 range with the given start and end bits.
+     */
+    void addIpv6(long fromHigh, long fromLow, long toHigh, long toLow) {
+        long sizeLow = toLow - fromLow;
+        long sizeHigh = toHigh - fromHigh - (Long.compareUnsigned(toLow, fromLow) < 0 ? 1 : 0);
+        sizeLow += 1;
+        if (sizeLow == 0) {
+            sizeHigh += 1;
+            if (sizeHigh == 0) {
+                ++ipv6Overflow;
+            }
+        }
+        long low = ipv6Low + sizeLow;
+        long carry = Long.compareUnsigned(low, ipv6Low) < 0 ? 1 : 0;
+        long high = ipv6High + sizeHigh + carry;
+        if (Long.compareUnsigned(high, ipv6High) < 0 || (carry == 1 && high == ipv6High)) {
+            ++ipv6Overflow;
+        }
+        ipv6Low = low;
+        ipv6High = high;
+    }
+
+    BigInteger toBigInteger() {
+        BigInteger ipv6 = new BigInteger(1, new byte[]{
+            (byte) (ipv6High >>> 56), (byte) (ipv6High >>> 48), (byte) (ipv6High >>> 40), (byte) (ipv6High >>> 32),
+            (byte) (ipv6High >>> 24), (byte) (ipv6High >>> 16), (byte) (ipv6High >>> 8), (byte) ipv6High,
+            (byte) (ipv6Low >>> 56), (byte) (ipv6Low >>> 48), (byte) (ipv6Low >>> 40), (byte) (ipv6Low >>> 32),
+            (byte) (ipv6Low >>> 24), (byte) (ipv6Low >>> 16), (byte) (ipv6Low >>> 8), (byte) ipv6Low,
+        });
+        return BigInteger.valueOf(ipv6Overflow).shiftLeft(128).add(ipv6).add(BigInteger.valueOf(count));
+    }
+
+    /**
+     * Counts the elements of the left and right resources, and of their intersection, in a single sweep.
+     */
+    static void sweep(Iterator<IpResource> left, Iterator<IpResource> right,
+                      AddressCounter leftCount, AddressCounter rightCount, AddressCounter intersectionCount) {
+        IpResource leftResource = next(left, leftCount);
+        IpResource rightResource = next(right, rightCount);
+        while (leftResource != null && rightResource != null) {
+            if (leftResource.getType() == rightResource.getType()) {
+                UniqueIpResource start = leftResource.getStart().max(rightResource.getStart());
+                UniqueIpResource end = leftResource.getEnd().min(rightResource.getEnd());
+                if (start.compareTo(end) <= 0) {
+                    intersectionCount.add(start, end);
+                }
+            }
+            int compareTo = leftResource.getEnd().compareTo(rightResource.getEnd());
+            if (compareTo <= 0) {
+                leftResource = next(left, leftCount);
+            }
+            if (compareTo >= 0) {
+                rightResource = next(right, rightCount);
+            }
+        }
+        while (leftResource != null) {
+            leftResource = next(left, leftCount);
+        }
+        while (rightResource != null) {
+            rightResource = next(right, rightCount);
+        }
+    }
+
+    private static IpResource next(Iterator<IpResource> iterator, AddressCounter counter) {
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        IpResource result = iterator.next();
+        counter.add(result.getStart(), result.getEnd());
+        return result;
+    }
+
+    private static long value(UniqueIpResource resource) {
+        return resource instanceof Asn ? ((Asn) resource).longValue() : ((Ipv4Address) resource).longValue();
+    }
+}
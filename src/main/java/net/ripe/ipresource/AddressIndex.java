@@ -0,0 +1,154 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.BitSet;
+
+/**
+ * Flat primitive index of the IPv4 and IPv6 ranges of a resource set, for batched address lookups without
+ * boxing. The ranges are stored as {@link PrimitiveRanges}. Sorted batches are matched by galloping forward
+ * through the ranges, other batches by a branch-free binary search.
+ */
+final class AddressIndex {
+
+    private final long[] ipv4Bounds;
+    private final long[] ipv6Bounds;
+
+    AddressIndex(Iterable<IpResource> resources) {
+        ipv4Bounds = PrimitiveRanges.of(resources, IpResourceType.IPv4);
+        ipv6Bounds = PrimitiveRanges.of(resources, IpResourceType.IPv6);
+    }
+
+    BitSet containsIpv4(int[] addresses) {
+        BitSet result = new BitSet(addresses.length);
+        if (isSortedUnsigned(addresses)) {
+            int range = -1;
+            for (int i = 0; i < addresses.length; ++i) {
+                long address = Integer.toUnsignedLong(addresses[i]);
+                range = PrimitiveRanges.floorFrom(ipv4Bounds, range, address);
+                if (range >= 0 && address <= ipv4Bounds[2 * range + 1]) {
+                    result.set(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < addresses.length; ++i) {
+                if (containsIpv4(Integer.toUnsignedLong(addresses[i]))) {
+                    result.set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    BitSet containsIpv4(long[] addresses) {
+        BitSet result = new BitSet(addresses.length);
+        if (isSorted(addresses)) {
+            int range = -1;
+            for (int i = 0; i < addresses.length; ++i) {
+                long address = addresses[i];
+                range = PrimitiveRanges.floorFrom(ipv4Bounds, range, address);
+                if (range >= 0 && address <= ipv4Bounds[2 * range + 1]) {
+                    result.set(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < addresses.length; ++i) {
+                if (containsIpv4(addresses[i])) {
+                    result.set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Addresses are given as pairs of high and low bits, the result has one bit per pair.
+     */
+    BitSet containsIpv6(long[] addresses) {
+        if (addresses.length % 2 != 0) {
+            throw new IllegalArgumentException("IPv6 addresses must be given as pairs of high and low bits");
+        }
+        int count = addresses.length / 2;
+        BitSet result = new BitSet(count);
+        if (isSortedPairs(addresses)) {
+            int range = -1;
+            for (int i = 0; i < count; ++i) {
+                long high = addresses[2 * i];
+                long low = addresses[2 * i + 1];
+                range = PrimitiveRanges.floorFrom(ipv6Bounds, range, high, low);
+                if (range >= 0 && Ipv6Address.compareBits(high, low, ipv6Bounds[4 * range + 2], ipv6Bounds[4 * range + 3]) <= 0) {
+                    result.set(i);
+                }
+            }
+        } else {
+            for (int i = 0; i < count; ++i) {
+                if (containsIpv6(addresses[2 * i], addresses[2 * i + 1])) {
+                    result.set(i);
+                }
+            }
+        }
+        return result;
+    }
+
+    boolean containsIpv4(long address) {
+        return PrimitiveRanges.contains(ipv4Bounds, address);
+    }
+
+    boolean containsIpv6(long high, long low) {
+        return PrimitiveRanges.contains(ipv6Bounds, high, low);
+    }
+
+    private static boolean isSortedUnsigned(int[] values) {
+        for (int i = 1; i < values.length; ++i) {
+            if (Integer.compareUnsigned(values[i - 1], values[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSorted(long[] values) {
+        for (int i = 1; i < values.length; ++i) {
+            if (values[i - 1] > values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSortedPairs(long[] values) {
+        for (int i = 2; i < values.length; i += 2) {
+            if (Ipv6Address.compareBits(values[i - 2], values[i - 1], values[i], values[i + 1]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Immutable set of ASNs, stored as sorted ranges in a flat array of primitive longs. Operations avoid the
+ * type comparisons and object indirections of {@link ImmutableResourceSet}. Use
+ * {@link ImmutableResourceSet#getAsnSet()} and {@link #toImmutableResourceSet()} to convert between both.
+ */
+public final class AsnSet implements Iterable<IpResource> {
+
+    private static final AsnSet EMPTY = new AsnSet(PrimitiveRanges.EMPTY);
+    private static final AsnSet UNIVERSAL = new AsnSet(PrimitiveRanges.universe(IpResourceType.ASN));
+    private static final int WORDS = PrimitiveRanges.words(IpResourceType.ASN);
+
+    private final long[] bounds;
+
+    private AsnSet(long[] bounds) {
+        this.bounds = bounds;
+    }
+
+    private static AsnSet of(long[] bounds) {
+        return bounds.length == 0 ? EMPTY : new AsnSet(bounds);
+    }
+
+    public static AsnSet empty() {
+        return EMPTY;
+    }
+
+    public static AsnSet universal() {
+        return UNIVERSAL;
+    }
+
+    /**
+     * @throws IllegalArgumentException some of the resources are not ASNs
+     */
+    public static AsnSet of(Iterable<? extends IpResource> resources) {
+        ImmutableResourceSet set = resources instanceof ImmutableResourceSet ? (ImmutableResourceSet) resources : ImmutableResourceSet.of(resources);
+        Validate.isTrue(!set.containsType(IpResourceType.IPv4) && !set.containsType(IpResourceType.IPv6), "resources must all be ASNs");
+        return partOf(set);
+    }
+
+    /**
+     * @return the ASNs in the resource set
+     */
+    static AsnSet partOf(ImmutableResourceSet resources) {
+        return of(PrimitiveRanges.of(resources, IpResourceType.ASN));
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        return PrimitiveRanges.toImmutableResourceSet(IpResourceType.ASN, bounds);
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    /**
+     * @return the number of disjoint, non-adjacent ranges in this set
+     */
+    public int getRangeCount() {
+        return PrimitiveRanges.rangeCount(IpResourceType.ASN, bounds);
+    }
+
+    /**
+     * @return the range with the given index, in ascending order
+     */
+    public IpResource getRange(int index) {
+        Validate.isTrue(index >= 0 && index < getRangeCount(), "range index out of bounds: %d", index);
+        return PrimitiveRanges.resource(IpResourceType.ASN, bounds, index);
+    }
+
+    /**
+     * @return the number of ASNs in this set
+     */
+    public long getAsnCount() {
+        long result = 0;
+        for (int i = 0; i < bounds.length; i += 2) {
+            result += bounds[i + 1] - bounds[i] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @param asn the ASN number, values outside of the ASN space are never contained
+     */
+    public boolean contains(long asn) {
+        return PrimitiveRanges.contains(bounds, asn);
+    }
+
+    /**
+     * @return whether this set contains all ASNs from start to end (inclusive)
+     */
+    public boolean contains(long start, long end) {
+        Validate.isTrue(start <= end, "start must not be after end");
+        int index = PrimitiveRanges.floor(bounds, start);
+        return index >= 0 && end <= bounds[2 * index + 1];
+    }
+
+    /**
+     * @return whether this set contains any ASN from start to end (inclusive)
+     */
+    public boolean intersects(long start, long end) {
+        Validate.isTrue(start <= end, "start must not be after end");
+        return PrimitiveRanges.intersects(bounds, start, end);
+    }
+
+    public AsnSet union(AsnSet that) {
+        return that.isEmpty() ? this : isEmpty() ? that : of(PrimitiveRanges.union(bounds, that.bounds, WORDS));
+    }
+
+    public AsnSet intersection(AsnSet that) {
+        return of(PrimitiveRanges.intersection(bounds, that.bounds, WORDS));
+    }
+
+    public AsnSet difference(AsnSet that) {
+        return that.isEmpty() ? this : of(PrimitiveRanges.difference(bounds, that.bounds, WORDS));
+    }
+
+    public AsnSet complement() {
+        return of(PrimitiveRanges.difference(UNIVERSAL.bounds, bounds, WORDS));
+    }
+
+    public boolean contains(AsnSet that) {
+        return PrimitiveRanges.difference(that.bounds, bounds, WORDS).length == 0;
+    }
+
+    public boolean intersects(AsnSet that) {
+        return PrimitiveRanges.intersects(bounds, that.bounds, WORDS);
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        return PrimitiveRanges.iterator(IpResourceType.ASN, bounds);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || obj instanceof AsnSet && Arrays.equals(bounds, ((AsnSet) obj).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        return toImmutableResourceSet().toString();
+    }
+}
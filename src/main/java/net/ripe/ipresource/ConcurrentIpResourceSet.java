@@ -0,0 +1,210 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * A thread-safe mutable set of IP resources. Resources can be ASNs, IPv4 addresses, IPv6 addresses, or
+ * ranges. Adjacent resources are merged. Single-sized ranges are normalized into single resources.
+ * <p>
+ * Lookups do not lock. Modifications lock per resource type, so resources of different types can be
+ * modified concurrently. Modifications insert merged or remaining ranges before removing the ranges they
+ * replace, so a lookup never misses a resource that is in the set before and after a concurrent modification.
+ * Use {@link #snapshot()} to get a consistent copy; iteration is weakly consistent and may see the
+ * intermediate state of a concurrent modification.
+ * </p>
+ */
+public final class ConcurrentIpResourceSet implements Iterable<IpResource> {
+
+    /*
+     * Resources keyed by their end-point, as in IpResourceSet.
+     */
+    private final ConcurrentSkipListMap<UniqueIpResource, IpResource> resourcesByEndPoint = new ConcurrentSkipListMap<>();
+
+    private final ReentrantLock[] locks = new ReentrantLock[IpResourceType.values().length];
+
+    public ConcurrentIpResourceSet() {
+        for (int i = 0; i < locks.length; ++i) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public ConcurrentIpResourceSet(Iterable<? extends IpResource> resources) {
+        this();
+        addAll(resources);
+    }
+
+    public void addAll(Iterable<? extends IpResource> resources) {
+        for (IpResource resource : resources) {
+            add(resource);
+        }
+    }
+
+    public void add(IpResource resource) {
+        Validate.notNull(resource, "resource is null");
+
+        ReentrantLock lock = lockFor(resource.getType());
+        lock.lock();
+        try {
+            if (contains(resource)) {
+                return;
+            }
+
+            UniqueIpResource start = resource.getStart();
+            if (!start.equals(start.getType().getMinimum())) {
+                start = start.predecessor();
+            }
+
+            List<UniqueIpResource> absorbed = new ArrayList<>();
+            for (IpResource potentialMatch : resourcesByEndPoint.tailMap(start, true).values()) {
+                if (!resource.isMergeable(potentialMatch)) {
+                    break;
+                }
+                absorbed.add(potentialMatch.getEnd());
+                resource = resource.merge(potentialMatch);
+            }
+
+            resourcesByEndPoint.put(resource.getEnd(), ImmutableResourceSet.normalize(resource));
+            for (UniqueIpResource key : absorbed) {
+                if (!key.equals(resource.getEnd())) {
+                    resourcesByEndPoint.remove(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean remove(IpResource resource) {
+        Validate.notNull(resource, "resource is null");
+
+        ReentrantLock lock = lockFor(resource.getType());
+        lock.lock();
+        try {
+            boolean removed = false;
+            Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
+            while (potentialMatch != null && potentialMatch.getValue().overlaps(resource)) {
+                IpResource existing = potentialMatch.getValue();
+                if (existing.getStart().compareTo(resource.getStart()) < 0) {
+                    IpResource lower = existing.getStart().upTo(resource.getStart().predecessor());
+                    resourcesByEndPoint.put(lower.getEnd(), ImmutableResourceSet.normalize(lower));
+                }
+                if (existing.getEnd().compareTo(resource.getEnd()) > 0) {
+                    IpResource upper = resource.getEnd().successor().upTo(existing.getEnd());
+                    resourcesByEndPoint.put(existing.getEnd(), ImmutableResourceSet.normalize(upper));
+                    return true;
+                }
+                resourcesByEndPoint.remove(existing.getEnd());
+                removed = true;
+
+                potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void removeAll(Iterable<? extends IpResource> resources) {
+        for (IpResource resource : resources) {
+            remove(resource);
+        }
+    }
+
+    public boolean isEmpty() {
+        return resourcesByEndPoint.isEmpty();
+    }
+
+    public boolean contains(IpResource resource) {
+        Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
+        return potentialMatch != null && potentialMatch.getValue().contains(resource);
+    }
+
+    public boolean contains(Iterable<? extends IpResource> other) {
+        for (IpResource resource : other) {
+            if (!contains(resource)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean intersects(IpResource resource) {
+        Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
+        return potentialMatch != null && potentialMatch.getValue().overlaps(resource);
+    }
+
+    /**
+     * @return a consistent immutable copy of this set, taken while no modifications are in progress
+     */
+    public ImmutableResourceSet snapshot() {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            return new SortedResourceSetBuilder().appendAll(resourcesByEndPoint.values()).build();
+        } finally {
+            for (ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return a weakly consistent iterator over the resources in this set
+     */
+    @Override
+    public Iterator<IpResource> iterator() {
+        return Collections.unmodifiableCollection(resourcesByEndPoint.values()).iterator();
+    }
+
+    public Stream<IpResource> stream() {
+        return resourcesByEndPoint.values().stream();
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private ReentrantLock lockFor(IpResourceType type) {
+        return locks[type.ordinal()];
+    }
+}
@@ -29,11 +29,23 @@
  */
 package net.ripe.ipresource;
 
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -50,6 +62,13 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
 
     private static final long serialVersionUID = 1L;
 
+    /*
+     * Minimum number of sets per group for the parallel k-way operations.
+     */
+    private static final int PARALLEL_GROUP_SIZE = 64;
+
+    private static final ResourceSetPool CANONICAL_POOL = new ResourceSetPool(ResourceSetPool.DEFAULT_MAXIMUM_SIZE);
+
     private static final ImmutableResourceSet EMPTY = new ImmutableResourceSet();
     private static final ImmutableResourceSet UNIVERSAL = ImmutableResourceSet.of(IpResource.ALL_AS_RESOURCES, IpResource.ALL_IPV4_RESOURCES, IpResource.ALL_IPV6_RESOURCES);
 
@@ -60,15 +79,53 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
      */
     final TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint;
 
+    /*
+     * Cached hash code, zero when not yet computed.
+     */
+    private transient int hash;
+
+    /*
+     * The pool this instance is the canonical instance of, if any. A pool holds at most one canonical instance
+     * for any content.
+     */
+    private transient volatile ResourceSetPool canonicalPool;
+
+    /*
+     * Lazily created primitive index for batched address lookups.
+     */
+    private transient volatile AddressIndex addressIndex;
+
+    /*
+     * Lazily created cumulative count index for rank, select, and sampling.
+     */
+    private transient volatile ResourceRankIndex rankIndex;
+
+    /*
+     * Lazily computed content fingerprint, or maintained by the builder that created this set.
+     */
+    private transient volatile ResourceSetFingerprint fingerprint;
+
+    /*
+     * Whether lookups first consult the lazily created prefilter.
+     */
+    private final transient boolean prefiltered;
+    private transient volatile ResourcePrefilter prefilter;
+
     private ImmutableResourceSet() {
         this.resourcesByEndPoint = new TreeMap<>();
+        this.prefiltered = false;
     }
 
-    private ImmutableResourceSet(TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint) {
+    ImmutableResourceSet(TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint) {
+        this(resourcesByEndPoint, false);
+    }
+
+    private ImmutableResourceSet(TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint, boolean prefiltered) {
         if (resourcesByEndPoint.isEmpty()) {
             throw new IllegalArgumentException("empty resource set must use ImmutableResourceSet.empty()");
         }
         this.resourcesByEndPoint = resourcesByEndPoint;
+        this.prefiltered = prefiltered;
     }
 
 
@@ -96,8 +153,11 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         }
     }
 
+    /**
+     * @return an immutable snapshot of the resources, see {@link IpResourceSet#freeze()}
+     */
     public static ImmutableResourceSet of(IpResourceSet resources) {
-        return resources.isEmpty() ? empty() : new ImmutableResourceSet(resources.resourcesByEndPoint);
+        return resources.freeze();
     }
 
     public static ImmutableResourceSet empty() {
@@ -173,6 +233,114 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         }
     }
 
+    /**
+     * Computes the union of all sets with a k-way merge of the sorted sets, in time proportional to the total
+     * number of resources times the logarithm of the number of sets.
+     */
+    public static ImmutableResourceSet unionAll(Collection<ImmutableResourceSet> sets) {
+        Validate.noNullElements(sets, "sets contains null");
+        if (sets.size() == 1) {
+            return sets.iterator().next();
+        }
+        List<Iterator<IpResource>> iterators = new ArrayList<>(sets.size());
+        for (ImmutableResourceSet set : sets) {
+            iterators.add(set.iterator());
+        }
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder();
+        ResourceSetSweep.mergeAll(iterators, builder::append);
+        return builder.build();
+    }
+
+    /**
+     * Computes the intersection of all sets in a single sweep over the sorted sets, in time proportional to
+     * the total number of resources times the logarithm of the number of sets. The intersection of no sets
+     * is the {@link #universal()} set.
+     */
+    public static ImmutableResourceSet intersectAll(Collection<ImmutableResourceSet> sets) {
+        Validate.noNullElements(sets, "sets contains null");
+        if (sets.isEmpty()) {
+            return universal();
+        } else if (sets.size() == 1) {
+            return sets.iterator().next();
+        }
+        List<Iterator<IpResource>> iterators = new ArrayList<>(sets.size());
+        for (ImmutableResourceSet set : sets) {
+            iterators.add(set.iterator());
+        }
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder();
+        ResourceSetSweep.intersectAll(iterators, builder::append);
+        return builder.build();
+    }
+
+    /**
+     * Like {@link #unionAll(Collection)}, but splits the sets into groups that are merged in parallel before
+     * merging the results. This pays off for very many sets.
+     */
+    public static ImmutableResourceSet parallelUnionAll(Collection<ImmutableResourceSet> sets) {
+        return unionAll(mapGroupsInParallel(sets, ImmutableResourceSet::unionAll));
+    }
+
+    /**
+     * Like {@link #intersectAll(Collection)}, but splits the sets into groups that are intersected in parallel
+     * before intersecting the results. This pays off for very many sets.
+     */
+    public static ImmutableResourceSet parallelIntersectAll(Collection<ImmutableResourceSet> sets) {
+        return intersectAll(mapGroupsInParallel(sets, ImmutableResourceSet::intersectAll));
+    }
+
+    private static List<ImmutableResourceSet> mapGroupsInParallel(Collection<ImmutableResourceSet> sets, Function<List<ImmutableResourceSet>, ImmutableResourceSet> operation) {
+        List<ImmutableResourceSet> list = new ArrayList<>(sets);
+        int groupCount = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), list.size() / PARALLEL_GROUP_SIZE));
+        if (groupCount == 1) {
+            return list;
+        }
+        int groupSize = (list.size() + groupCount - 1) / groupCount;
+        return IntStream.range(0, groupCount)
+            .parallel()
+            .mapToObj(group -> operation.apply(list.subList(group * groupSize, Math.min(list.size(), (group + 1) * groupSize))))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Like {@link #union(ImmutableResourceSet)}, but cuts the resource space into partitions of about the same
+     * number of resources that are merged in parallel. This pays off for sets with many thousands of resources,
+     * smaller sets are merged sequentially.
+     */
+    public ImmutableResourceSet parallelUnion(ImmutableResourceSet that) {
+        if (!isParallelizable(that)) {
+            return union(that);
+        }
+        return ParallelResourceSetAlgebra.apply(resourcesByEndPoint, that.resourcesByEndPoint, ResourceSetSweep::merge);
+    }
+
+    /**
+     * Like {@link #intersection(ImmutableResourceSet)}, but intersects partitions of the resource space in
+     * parallel, see {@link #parallelUnion(ImmutableResourceSet)}.
+     */
+    public ImmutableResourceSet parallelIntersection(ImmutableResourceSet that) {
+        if (!isParallelizable(that)) {
+            return intersection(that);
+        }
+        return ParallelResourceSetAlgebra.apply(resourcesByEndPoint, that.resourcesByEndPoint,
+            (left, right, result) -> ResourceSetSweep.intersectAll(Arrays.asList(left, right), result));
+    }
+
+    /**
+     * Like {@link #difference(ImmutableResourceSet)}, but subtracts partitions of the resource space in
+     * parallel, see {@link #parallelUnion(ImmutableResourceSet)}.
+     */
+    public ImmutableResourceSet parallelDifference(ImmutableResourceSet that) {
+        if (!isParallelizable(that)) {
+            return difference(that);
+        }
+        return ParallelResourceSetAlgebra.apply(resourcesByEndPoint, that.resourcesByEndPoint,
+            (left, right, result) -> ResourceSetSweep.difference(left, right, result, resource -> {}));
+    }
+
+    private boolean isParallelizable(ImmutableResourceSet that) {
+        return Math.max(this.resourcesByEndPoint.size(), that.resourcesByEndPoint.size()) >= ParallelResourceSetAlgebra.MINIMUM_PARALLEL_SIZE;
+    }
+
     public ImmutableResourceSet difference(ImmutableResourceSet that) {
         if (!this.intersects(that)) {
             return this;
@@ -181,6 +349,89 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         }
     }
 
+    /**
+     * Computes the changes from this set to {@code that} set in a single sweep over both sets.
+     *
+     * @return the resources added and removed going from this set to {@code that}
+     */
+    public Delta diff(ImmutableResourceSet that) {
+        SortedResourceSetBuilder added = new SortedResourceSetBuilder();
+        SortedResourceSetBuilder removed = new SortedResourceSetBuilder();
+        diff(that, added::append, removed::append);
+        return new Delta(added.build(), removed.build());
+    }
+
+    /**
+     * Streaming form of {@link #diff(ImmutableResourceSet)}: reports the resources added and removed going from
+     * this set to {@code that} set, each in ascending order, without collecting them into sets.
+     */
+    public void diff(ImmutableResourceSet that, Consumer<? super IpResource> added, Consumer<? super IpResource> removed) {
+        Validate.notNull(that, "that is null");
+        Validate.notNull(added, "added is null");
+        Validate.notNull(removed, "removed is null");
+        if (this != that) {
+            ResourceSetSweep.difference(this.iterator(), that.iterator(), removed, added);
+        }
+    }
+
+    /**
+     * Applies the changes computed by {@link #diff(ImmutableResourceSet)} in linear time. Removed resources are
+     * subtracted before the added resources are merged in.
+     */
+    public ImmutableResourceSet applyDelta(ImmutableResourceSet added, ImmutableResourceSet removed) {
+        Validate.notNull(added, "added is null");
+        Validate.notNull(removed, "removed is null");
+        if (added.isEmpty() && removed.isEmpty()) {
+            return this;
+        }
+        List<IpResource> remaining = new ArrayList<>(resourcesByEndPoint.size() + 1);
+        ResourceSetSweep.difference(this.iterator(), removed.iterator(), remaining::add, ignored -> {});
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder(remaining.size() + added.resourcesByEndPoint.size());
+        ResourceSetSweep.merge(remaining.iterator(), added.iterator(), builder::append);
+        return builder.build();
+    }
+
+    public ImmutableResourceSet applyDelta(Delta delta) {
+        return applyDelta(delta.getAdded(), delta.getRemoved());
+    }
+
+    /**
+     * @return the number of ASNs and addresses in both this set and {@code that} set, computed without
+     * creating the intersection
+     */
+    public BigInteger intersectionAddressCount(ImmutableResourceSet that) {
+        return countAddresses(that)[2];
+    }
+
+    /**
+     * @return the number of ASNs and addresses in this set or {@code that} set, computed without creating
+     * the union
+     */
+    public BigInteger unionAddressCount(ImmutableResourceSet that) {
+        BigInteger[] counts = countAddresses(that);
+        return counts[0].add(counts[1]).subtract(counts[2]);
+    }
+
+    /**
+     * @return the number of ASNs and addresses in this set but not in {@code that} set, computed without
+     * creating the difference
+     */
+    public BigInteger differenceAddressCount(ImmutableResourceSet that) {
+        BigInteger[] counts = countAddresses(that);
+        return counts[0].subtract(counts[2]);
+    }
+
+    /*
+     * The sizes of this set, that set, and their intersection, counted in a single sweep.
+     */
+    private BigInteger[] countAddresses(ImmutableResourceSet that) {
+        AddressCounter thisCount = new AddressCounter();
+        AddressCounter thatCount = new AddressCounter();
+        AddressCounter intersectionCount = new AddressCounter();
+        AddressCounter.sweep(this.iterator(), that.iterator(), thisCount, thatCount, intersectionCount);
+        return new BigInteger[]{thisCount.toBigInteger(), thatCount.toBigInteger(), intersectionCount.toBigInteger()};
+    }
+
     public ImmutableResourceSet complement() {
         return universal().difference(this);
     }
@@ -200,15 +451,165 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         return StreamSupport.stream(spliterator(), false);
     }
 
+    /**
+     * @return the minimal set of prefixes covering the IPv4 and IPv6 resources in this set, in ascending order.
+     * ASN resources are skipped. Prefixes are computed lazily while the stream is consumed.
+     */
+    public Stream<IpRange> prefixes() {
+        return prefixes(IpResourceType.IPv4.getBitSize(), IpResourceType.IPv6.getBitSize());
+    }
+
+    /**
+     * Like {@link #prefixes()}, but no prefix is longer than the given maximum length for its type. Ranges are
+     * widened to the boundaries of the prefixes with the maximum length, so the result may cover more addresses
+     * than this set.
+     *
+     * @throws IllegalArgumentException if a maximum prefix length is out of range for its type
+     */
+    public Stream<IpRange> prefixes(int maximumIpv4PrefixLength, int maximumIpv6PrefixLength) {
+        return PrefixIterator.stream(resourcesByEndPoint.values(), maximumIpv4PrefixLength, maximumIpv6PrefixLength);
+    }
+
     public boolean isEmpty() {
         return resourcesByEndPoint.isEmpty();
     }
 
     public boolean contains(IpResource resource) {
+        if (prefilterRejects(resource)) {
+            return false;
+        }
         Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
         return potentialMatch != null && potentialMatch.getValue().contains(resource);
     }
 
+    /**
+     * Looks up a batch of IPv4 addresses, given as unsigned 32-bit values. Sorted batches are matched in a
+     * single pass over this set, other batches using binary search.
+     *
+     * @return the indexes of the addresses contained in this set
+     */
+    public BitSet containsIpv4(int[] addresses) {
+        return addressIndex().containsIpv4(addresses);
+    }
+
+    /**
+     * Like {@link #containsIpv4(int[])}, with addresses given as long values. Values outside of the IPv4
+     * address space are never contained.
+     */
+    public BitSet containsIpv4(long[] addresses) {
+        return addressIndex().containsIpv4(addresses);
+    }
+
+    /**
+     * Looks up a batch of IPv6 addresses, each given as two consecutive longs holding the most and least
+     * significant 64 bits of the address. Sorted batches are matched in a single pass over this set, other
+     * batches using binary search.
+     *
+     * @return the indexes of the addresses (not of the array elements) contained in this set
+     * @throws IllegalArgumentException the length of the array is odd
+     */
+    public BitSet containsIpv6(long[] addresses) {
+        return addressIndex().containsIpv6(addresses);
+    }
+
+    /**
+     * Returns an equal resource set that checks a {@link ResourcePrefilter} before looking up single resources
+     * with {@link #contains(IpResource)} and {@link #intersects(IpResource)}. This pays off when most lookups
+     * miss. The prefilter is built on the first lookup and is not serialized.
+     */
+    public ImmutableResourceSet withPrefilter() {
+        return prefiltered || isEmpty() ? this : new ImmutableResourceSet(resourcesByEndPoint, true);
+    }
+
+    /**
+     * @return the prefilter of this set with its lookup statistics, or null if the set has no prefilter
+     */
+    public ResourcePrefilter getPrefilter() {
+        if (!prefiltered) {
+            return null;
+        }
+        ResourcePrefilter result = prefilter;
+        if (result == null) {
+            synchronized (this) {
+                result = prefilter;
+                if (result == null) {
+                    result = ResourcePrefilter.of(resourcesByEndPoint.values());
+                    prefilter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean prefilterRejects(IpResource resource) {
+        return prefiltered && !getPrefilter().mightIntersect(resource);
+    }
+
+    /**
+     * @return the stable content fingerprint of this set, see {@link ResourceSetFingerprint}. The fingerprint is
+     * computed on first use. Sets built with a {@link Builder} that starts from a set with a known fingerprint, such
+     * as the results of {@link #union(ImmutableResourceSet)} and {@link #difference(ImmutableResourceSet)}, get their
+     * fingerprint updated from the changed ranges only.
+     */
+    public ResourceSetFingerprint fingerprint() {
+        ResourceSetFingerprint result = fingerprint;
+        if (result == null) {
+            result = ResourceSetFingerprint.of(resourcesByEndPoint.values());
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the cumulative count index of this set, which is created on first use
+     */
+    public ResourceRankIndex rankIndex() {
+        ResourceRankIndex result = rankIndex;
+        if (result == null) {
+            result = new ResourceRankIndex(resourcesByEndPoint.values());
+            rankIndex = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the ASNs in this set as primitive set
+     */
+    public AsnSet getAsnSet() {
+        return AsnSet.partOf(this);
+    }
+
+    /**
+     * @return the IPv4 addresses in this set as primitive set
+     */
+    public Ipv4Set getIpv4Set() {
+        return Ipv4Set.partOf(this);
+    }
+
+    /**
+     * @return the IPv6 addresses in this set as primitive set
+     */
+    public Ipv6Set getIpv6Set() {
+        return Ipv6Set.partOf(this);
+    }
+
+    /**
+     * Compiles this set into a matcher for fast lookups of single ASNs and addresses. Use this for constant sets
+     * that are checked very often, the matcher is built from scratch on every call.
+     */
+    public ResourceSetMatcher compile() {
+        return new ResourceSetMatcher(resourcesByEndPoint.values());
+    }
+
+    private AddressIndex addressIndex() {
+        AddressIndex result = addressIndex;
+        if (result == null) {
+            result = new AddressIndex(resourcesByEndPoint.values());
+            addressIndex = result;
+        }
+        return result;
+    }
+
     public boolean contains(Iterable<? extends IpResource> other) {
         for (IpResource resource: other) {
             if (!contains(resource)) {
@@ -218,6 +619,53 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         return true;
     }
 
+    /**
+     * @return the resource in this set that contains the given resource, or null if there is none
+     */
+    public IpResource findContaining(IpResource resource) {
+        return ResourceNavigation.findContaining(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the last resource of the same type in this set that starts at or before the start of the given
+     * resource, or null if there is none
+     */
+    public IpResource floor(IpResource resource) {
+        return ResourceNavigation.floor(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the last resource of the same type in this set that ends before the start of the given resource,
+     * or null if there is none
+     */
+    public IpResource lower(IpResource resource) {
+        return ResourceNavigation.lower(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the first resource of the same type in this set that ends at or after the end of the given
+     * resource, or null if there is none
+     */
+    public IpResource ceiling(IpResource resource) {
+        return ResourceNavigation.ceiling(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the first resource of the same type in this set that starts after the end of the given resource,
+     * or null if there is none
+     */
+    public IpResource higher(IpResource resource) {
+        return ResourceNavigation.higher(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * Returns a view of the resources in this set inside the bound, clipped to the bound. Creating the view
+     * does not copy and iterating it only visits the resources inside the bound.
+     */
+    public ResourceSubSet subSet(IpResource bound) {
+        return new ResourceSubSet(() -> resourcesByEndPoint, bound);
+    }
+
     public boolean containsType(IpResourceType type) {
         for (IpResource resource: resourcesByEndPoint.values()) {
             if (type == resource.getType()) {
@@ -228,6 +676,9 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
     }
 
     public boolean intersects(IpResource resource) {
+        if (prefilterRejects(resource)) {
+            return false;
+        }
         Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
         return potentialMatch != null && potentialMatch.getValue().overlaps(resource);
     }
@@ -267,6 +718,18 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         return builder.build();
     }
 
+    /**
+     * Parses resources from the reader incrementally, so the textual input is never held in memory as a whole.
+     * Resources may be separated by commas, whitespace, and newlines. The reader is not closed.
+     *
+     * @throws IllegalArgumentException the input contains an invalid resource
+     */
+    public static ImmutableResourceSet parse(Reader reader) throws IOException {
+        Builder builder = new Builder();
+        ResourceTokenizer.parse(reader, builder::add);
+        return builder.build();
+    }
+
     @Override
     public String toString() {
         return resourcesByEndPoint.values().stream().map(Objects::toString).collect(Collectors.joining(", "));
@@ -281,23 +744,103 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
             return false;
         }
         ImmutableResourceSet other = (ImmutableResourceSet) obj;
+        ResourceSetPool pool = this.canonicalPool;
+        if (pool != null && pool == other.canonicalPool) {
+            return false;
+        }
+        if (this.hash != 0 && other.hash != 0 && this.hash != other.hash) {
+            return false;
+        }
         return resourcesByEndPoint.equals(other.resourcesByEndPoint);
     }
 
     @Override
     public int hashCode() {
-        return resourcesByEndPoint.hashCode();
+        int result = hash;
+        if (result == 0) {
+            result = resourcesByEndPoint.hashCode();
+            hash = result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical instance of this resource set. Equal sets share a single canonical instance, so
+     * duplicate sets can be released and comparing two canonical instances only compares references.
+     * Canonical instances are only weakly referenced by the pool. When the pool is full this set is returned
+     * as is.
+     */
+    public ImmutableResourceSet canonical() {
+        return canonicalPool == CANONICAL_POOL ? this : CANONICAL_POOL.intern(this);
+    }
+
+    void markCanonical(ResourceSetPool pool) {
+        canonicalPool = pool;
+    }
+
+    /**
+     * The resources added and removed between two versions of a resource set.
+     */
+    public static final class Delta {
+        private final ImmutableResourceSet added;
+        private final ImmutableResourceSet removed;
+
+        public Delta(ImmutableResourceSet added, ImmutableResourceSet removed) {
+            this.added = Validate.notNull(added, "added is null");
+            this.removed = Validate.notNull(removed, "removed is null");
+        }
+
+        public ImmutableResourceSet getAdded() {
+            return added;
+        }
+
+        public ImmutableResourceSet getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Delta)) {
+                return false;
+            }
+            Delta other = (Delta) obj;
+            return added.equals(other.added) && removed.equals(other.removed);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * added.hashCode() + removed.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "added: [" + added + "], removed: [" + removed + "]";
+        }
     }
 
     public static class Builder {
         private TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint;
 
+        /*
+         * Fingerprint of the resources in the builder, only maintained when starting from a set with a known
+         * fingerprint. Otherwise computing it when needed is just as fast.
+         */
+        private ResourceSetFingerprint.Accumulator fingerprint;
+
         public Builder() {
             this.resourcesByEndPoint = new TreeMap<>();
         }
 
         public Builder(ImmutableResourceSet resources) {
             this.resourcesByEndPoint = new TreeMap<>(resources.resourcesByEndPoint);
+            this.fingerprint = knownFingerprint(resources);
         }
 
         public Builder(IpResourceSet resources) {
@@ -307,6 +850,7 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         public Builder(Iterable<? extends IpResource> resources) {
             if (resources instanceof ImmutableResourceSet) {
                 this.resourcesByEndPoint = new TreeMap<>(((ImmutableResourceSet) resources).resourcesByEndPoint);
+                this.fingerprint = knownFingerprint((ImmutableResourceSet) resources);
             } else if (resources instanceof IpResourceSet) {
                 this.resourcesByEndPoint = new TreeMap<>(((IpResourceSet) resources).resourcesByEndPoint);
             } else {
@@ -320,9 +864,17 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         public ImmutableResourceSet build() {
             assertNotAlreadyUsed();
             try {
-                return resourcesByEndPoint.isEmpty() ? empty() : new ImmutableResourceSet(resourcesByEndPoint);
+                if (resourcesByEndPoint.isEmpty()) {
+                    return empty();
+                }
+                ImmutableResourceSet result = new ImmutableResourceSet(resourcesByEndPoint);
+                if (fingerprint != null) {
+                    result.fingerprint = fingerprint.toFingerprint();
+                }
+                return result;
             } finally {
                 resourcesByEndPoint = null;
+                fingerprint = null;
             }
         }
 
@@ -355,13 +907,14 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
                 IpResource potentialMatch = iterator.next();
                 if (resource.isMergeable(potentialMatch)) {
                     iterator.remove();
+                    removed(potentialMatch);
                     resource = resource.merge(potentialMatch);
                 } else {
                     break;
                 }
             }
 
-            resourcesByEndPoint.put(resource.getEnd(), normalize(resource));
+            put(normalize(resource));
 
             return this;
         }
@@ -372,9 +925,10 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
             Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
             while (potentialMatch != null && potentialMatch.getValue().overlaps(resource)) {
                 resourcesByEndPoint.remove(potentialMatch.getKey());
+                removed(potentialMatch.getValue());
 
                 for (IpResource remains: potentialMatch.getValue().subtract(resource)) {
-                    resourcesByEndPoint.put(remains.getEnd(), normalize(remains));
+                    put(normalize(remains));
                 }
 
                 potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
@@ -383,6 +937,27 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
             return this;
         }
 
+        private void put(IpResource resource) {
+            IpResource previous = resourcesByEndPoint.put(resource.getEnd(), resource);
+            if (fingerprint != null) {
+                if (previous != null) {
+                    fingerprint.subtract(previous);
+                }
+                fingerprint.add(resource);
+            }
+        }
+
+        private void removed(IpResource resource) {
+            if (fingerprint != null) {
+                fingerprint.subtract(resource);
+            }
+        }
+
+        private static ResourceSetFingerprint.Accumulator knownFingerprint(ImmutableResourceSet resources) {
+            ResourceSetFingerprint known = resources.fingerprint;
+            return known == null ? null : new ResourceSetFingerprint.Accumulator(known);
+        }
+
         private void assertNotAlreadyUsed() {
             if (resourcesByEndPoint == null) {
                 throw new IllegalStateException("builder can only be used once");
@@ -390,7 +965,51 @@ public final class ImmutableResourceSet implements Iterable<IpResource>, Seriali
         }
     }
 
-    private static IpResource normalize(IpResource resource) {
+    static IpResource normalize(IpResource resource) {
         return resource.isUnique() ? resource.getStart() : resource;
     }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    /*
+     * Instances serialized before the introduction of the serialization proxy are read using the default
+     * serialized form.
+     */
+    private Object readResolve() {
+        return isEmpty() ? EMPTY : this;
+    }
+
+    /*
+     * Serialized form of an immutable resource set. Resources are written in their compact primitive
+     * form (see ResourceSetCodec) instead of as a graph of tree map entries and resource objects.
+     */
+    private static final class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient ImmutableResourceSet resources;
+
+        SerializationProxy(ImmutableResourceSet resources) {
+            this.resources = resources;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            ResourceSetCodec.write(out, resources.resourcesByEndPoint.values());
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            try {
+                resources = ResourceSetCodec.read(in).build();
+            } catch (IllegalArgumentException e) {
+                throw (InvalidObjectException) new InvalidObjectException(e.getMessage()).initCause(e);
+            }
+        }
+
+        private Object readResolve() {
+            return resources;
+        }
+    }
 }
@@ -0,0 +1,459 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * An immutable set of IPv4 and IPv6 addresses stored as a compressed binary
+ * (Patricia) trie of prefixes. Address lookups take time proportional to the
+ * prefix length, independent of the number of prefixes in the set, and set
+ * operations only visit the parts of the tries where the operands differ.
+ * <p>
+ * The trie is kept in canonical form: sibling prefixes that together form
+ * their parent prefix are merged, so two tries are equal if and only if they
+ * contain the same addresses. ASN resources are not supported.
+ * </p>
+ */
+public final class IpPrefixTrie implements Iterable<IpRange> {
+
+    private static final IpPrefixTrie EMPTY = new IpPrefixTrie(null, null);
+
+    private final Node ipv4Root;
+    private final Node ipv6Root;
+
+    private IpPrefixTrie(Node ipv4Root, Node ipv6Root) {
+        this.ipv4Root = ipv4Root;
+        this.ipv6Root = ipv6Root;
+    }
+
+    public static IpPrefixTrie empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @throws IllegalArgumentException the resources contain ASNs
+     */
+    public static IpPrefixTrie of(Iterable<? extends IpResource> resources) {
+        Node ipv4Root = null;
+        Node ipv6Root = null;
+        for (IpResource resource : resources) {
+            if (resource.getType() == IpResourceType.ASN) {
+                throw new IllegalArgumentException("Asn is not supported here: " + resource);
+            }
+            IpResourceType type = resource.getType();
+            PrefixIterator.PrefixSplitter prefixes = prefixes(resource);
+            while (prefixes.hasNext()) {
+                long highBits = highBits(type, prefixes);
+                long lowBits = lowBits(type, prefixes);
+                Node node = Node.full(highBits, lowBits, type.getBitSize() - prefixes.next());
+                if (type == IpResourceType.IPv4) {
+                    ipv4Root = union(ipv4Root, node);
+                } else {
+                    ipv6Root = union(ipv6Root, node);
+                }
+            }
+        }
+        return of(ipv4Root, ipv6Root);
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder();
+        for (IpRange prefix : this) {
+            builder.append(prefix);
+        }
+        return builder.build();
+    }
+
+    public boolean isEmpty() {
+        return ipv4Root == null && ipv6Root == null;
+    }
+
+    public boolean contains(IpResource resource) {
+        if (resource instanceof IpAddress) {
+            return contains((IpAddress) resource);
+        } else if (resource.getType() == IpResourceType.ASN) {
+            return false;
+        }
+        IpResourceType type = resource.getType();
+        PrefixIterator.PrefixSplitter prefixes = prefixes(resource);
+        while (prefixes.hasNext()) {
+            long highBits = highBits(type, prefixes);
+            long lowBits = lowBits(type, prefixes);
+            if (!containsPrefix(root(type), highBits, lowBits, type.getBitSize() - prefixes.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean contains(IpAddress address) {
+        return containsPrefix(root(address.getType()), highBits(address), lowBits(address), address.getType().getBitSize());
+    }
+
+    public IpPrefixTrie union(IpPrefixTrie that) {
+        return of(union(this.ipv4Root, that.ipv4Root), union(this.ipv6Root, that.ipv6Root));
+    }
+
+    public IpPrefixTrie intersection(IpPrefixTrie that) {
+        return of(intersection(this.ipv4Root, that.ipv4Root), intersection(this.ipv6Root, that.ipv6Root));
+    }
+
+    public IpPrefixTrie difference(IpPrefixTrie that) {
+        return of(difference(this.ipv4Root, that.ipv4Root), difference(this.ipv6Root, that.ipv6Root));
+    }
+
+    /**
+     * @return the prefixes in this set in ascending order. Adjacent prefixes that
+     * cannot be merged into a single prefix are returned separately.
+     */
+    @Override
+    public Iterator<IpRange> iterator() {
+        return new NodeIterator();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof IpPrefixTrie)) {
+            return false;
+        }
+        IpPrefixTrie that = (IpPrefixTrie) obj;
+        return Objects.equals(this.ipv4Root, that.ipv4Root) && Objects.equals(this.ipv6Root, that.ipv6Root);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ipv4Root, ipv6Root);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (IpRange prefix : this) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(prefix);
+        }
+        return result.toString();
+    }
+
+    private static IpPrefixTrie of(Node ipv4Root, Node ipv6Root) {
+        return ipv4Root == null && ipv6Root == null ? EMPTY : new IpPrefixTrie(ipv4Root, ipv6Root);
+    }
+
+    private Node root(IpResourceType type) {
+        return type == IpResourceType.IPv4 ? ipv4Root : ipv6Root;
+    }
+
+    /*
+     * The prefixes of the minimal prefix cover of an IP resource, without creating a range per prefix.
+     */
+    private static PrefixIterator.PrefixSplitter prefixes(IpResource resource) {
+        if (resource.getType() == IpResourceType.IPv4) {
+            long start = ((Ipv4Address) resource.getStart()).longValue();
+            long end = ((Ipv4Address) resource.getEnd()).longValue();
+            return new PrefixIterator.PrefixSplitter(Integer.SIZE, 0, start, 0, end);
+        }
+        Ipv6Address start = (Ipv6Address) resource.getStart();
+        Ipv6Address end = (Ipv6Address) resource.getEnd();
+        return new PrefixIterator.PrefixSplitter(2 * Long.SIZE, start.highBits(), start.lowBits(), end.highBits(), end.lowBits());
+    }
+
+    /*
+     * The left-aligned bits of the start of the next prefix of the splitter, which gives them right-aligned.
+     */
+    private static long highBits(IpResourceType type, PrefixIterator.PrefixSplitter prefixes) {
+        return type == IpResourceType.IPv4 ? prefixes.startLow() << Integer.SIZE : prefixes.startHigh();
+    }
+
+    private static long lowBits(IpResourceType type, PrefixIterator.PrefixSplitter prefixes) {
+        return type == IpResourceType.IPv4 ? 0 : prefixes.startLow();
+    }
+
+    private static boolean containsPrefix(Node node, long highBits, long lowBits, int length) {
+        while (node != null && node.length <= length && node.matches(highBits, lowBits)) {
+            if (node.full) {
+                return true;
+            }
+            node = bit(highBits, lowBits, node.length) ? node.right : node.left;
+        }
+        return false;
+    }
+
+    private static Node union(Node a, Node b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        }
+        int common = commonPrefixLength(a, b);
+        if (common == a.length && common == b.length) {
+            if (a.full) {
+                return a;
+            } else if (b.full) {
+                return b;
+            }
+            return Node.join(a, union(a.left, b.left), union(a.right, b.right));
+        } else if (common == a.length) {
+            if (a.full) {
+                return a;
+            }
+            return b.isRightOf(a) ? Node.join(a, a.left, union(a.right, b)) : Node.join(a, union(a.left, b), a.right);
+        } else if (common == b.length) {
+            return union(b, a);
+        } else {
+            Node parent = Node.internal(a.highBits, a.lowBits, common);
+            return a.isRightOf(parent) ? Node.join(parent, b, a) : Node.join(parent, a, b);
+        }
+    }
+
+    private static Node intersection(Node a, Node b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        int common = commonPrefixLength(a, b);
+        if (common == a.length && common == b.length) {
+            if (a.full) {
+                return b;
+            } else if (b.full) {
+                return a;
+            }
+            return Node.join(a, intersection(a.left, b.left), intersection(a.right, b.right));
+        } else if (common == a.length) {
+            if (a.full) {
+                return b;
+            }
+            return intersection(b.isRightOf(a) ? a.right : a.left, b);
+        } else if (common == b.length) {
+            return intersection(b, a);
+        } else {
+            return null;
+        }
+    }
+
+    private static Node difference(Node a, Node b) {
+        if (a == null || b == null) {
+            return a;
+        }
+        int common = commonPrefixLength(a, b);
+        if (common == a.length && common == b.length) {
+            if (b.full) {
+                return null;
+            } else if (a.full) {
+                return Node.join(a, difference(a.leftHalf(), b.left), difference(a.rightHalf(), b.right));
+            }
+            return Node.join(a, difference(a.left, b.left), difference(a.right, b.right));
+        } else if (common == a.length) {
+            Node left = a.full ? a.leftHalf() : a.left;
+            Node right = a.full ? a.rightHalf() : a.right;
+            return b.isRightOf(a) ? Node.join(a, left, difference(right, b)) : Node.join(a, difference(left, b), right);
+        } else if (common == b.length) {
+            if (b.full) {
+                return null;
+            }
+            return difference(a, a.isRightOf(b) ? b.right : b.left);
+        } else {
+            return a;
+        }
+    }
+
+    private static int commonPrefixLength(Node a, Node b) {
+        long highDifference = a.highBits ^ b.highBits;
+        int common = highDifference != 0
+            ? Long.numberOfLeadingZeros(highDifference)
+            : Long.SIZE + Long.numberOfLeadingZeros(a.lowBits ^ b.lowBits);
+        return Math.min(common, Math.min(a.length, b.length));
+    }
+
+    private static boolean bit(long highBits, long lowBits, int index) {
+        return index < Long.SIZE
+            ? (highBits << index) < 0
+            : (lowBits << (index - Long.SIZE)) < 0;
+    }
+
+    /*
+     * Addresses are stored left-aligned in 128 bits, so IPv4 and IPv6 prefixes are handled uniformly.
+     */
+    private static long highBits(UniqueIpResource address) {
+        return address instanceof Ipv4Address ? ((Ipv4Address) address).longValue() << Integer.SIZE : ((Ipv6Address) address).highBits();
+    }
+
+    private static long lowBits(UniqueIpResource address) {
+        return address instanceof Ipv4Address ? 0 : ((Ipv6Address) address).lowBits();
+    }
+
+    private static long mask(int length) {
+        return length <= 0 ? 0 : length >= Long.SIZE ? -1L : -1L << (Long.SIZE - length);
+    }
+
+    private static final class Node {
+        final long highBits;
+        final long lowBits;
+        final int length;
+        final boolean full;
+        final Node left;
+        final Node right;
+
+        private Node(long highBits, long lowBits, int length, boolean full, Node left, Node right) {
+            this.highBits = highBits & mask(length);
+            this.lowBits = lowBits & mask(length - Long.SIZE);
+            this.length = length;
+            this.full = full;
+            this.left = left;
+            this.right = right;
+        }
+
+        static Node full(long highBits, long lowBits, int length) {
+            return new Node(highBits, lowBits, length, true, null, null);
+        }
+
+        static Node internal(long highBits, long lowBits, int length) {
+            return new Node(highBits, lowBits, length, false, null, null);
+        }
+
+        /*
+         * Creates the node for the prefix of `parent` with the given children, keeping the trie compressed
+         * and canonical: missing children are elided and two full halves are merged into a full prefix.
+         */
+        static Node join(Node parent, Node left, Node right) {
+            if (left == null) {
+                return right;
+            } else if (right == null) {
+                return left;
+            } else if (left.full && right.full && left.length == parent.length + 1 && right.length == parent.length + 1) {
+                return new Node(parent.highBits, parent.lowBits, parent.length, true, null, null);
+            } else if (!parent.full && parent.left == left && parent.right == right) {
+                return parent;
+            }
+            return new Node(parent.highBits, parent.lowBits, parent.length, false, left, right);
+        }
+
+        boolean matches(long highBits, long lowBits) {
+            return ((highBits ^ this.highBits) & mask(length)) == 0 && ((lowBits ^ this.lowBits) & mask(length - Long.SIZE)) == 0;
+        }
+
+        boolean isRightOf(Node parent) {
+            return bit(highBits, lowBits, parent.length);
+        }
+
+        Node leftHalf() {
+            return new Node(highBits, lowBits, length + 1, true, null, null);
+        }
+
+        Node rightHalf() {
+            if (length < Long.SIZE) {
+                return new Node(highBits | (Long.MIN_VALUE >>> length), lowBits, length + 1, true, null, null);
+            } else {
+                return new Node(highBits, lowBits | (Long.MIN_VALUE >>> (length - Long.SIZE)), length + 1, true, null, null);
+            }
+        }
+
+        IpRange toIpRange(IpResourceType type) {
+            IpAddress start = type == IpResourceType.IPv4
+                ? new Ipv4Address(highBits >>> Integer.SIZE)
+                : Ipv6Address.fromBits(highBits, lowBits);
+            return IpRange.prefix(start, length);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Node)) {
+                return false;
+            }
+            Node that = (Node) obj;
+            return this.highBits == that.highBits && this.lowBits == that.lowBits && this.length == that.length
+                && this.full == that.full && Objects.equals(this.left, that.left) && Objects.equals(this.right, that.right);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(highBits, lowBits, length, full, left, right);
+        }
+    }
+
+    private final class NodeIterator implements Iterator<IpRange> {
+        private final Deque<Node> ipv4Pending = new ArrayDeque<>();
+        private final Deque<Node> ipv6Pending = new ArrayDeque<>();
+        private IpRange next;
+
+        NodeIterator() {
+            if (ipv4Root != null) {
+                ipv4Pending.push(ipv4Root);
+            }
+            if (ipv6Root != null) {
+                ipv6Pending.push(ipv6Root);
+            }
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public IpRange next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            IpRange result = next;
+            next = advance();
+            return result;
+        }
+
+        private IpRange advance() {
+            IpRange result = advance(ipv4Pending, IpResourceType.IPv4);
+            return result != null ? result : advance(ipv6Pending, IpResourceType.IPv6);
+        }
+
+        private IpRange advance(Deque<Node> pending, IpResourceType type) {
+            while (!pending.isEmpty()) {
+                Node node = pending.pop();
+                if (node.full) {
+                    return node.toIpRange(type);
+                }
+                pending.push(node.right);
+                pending.push(node.left);
+            }
+            return null;
+        }
+    }
+}
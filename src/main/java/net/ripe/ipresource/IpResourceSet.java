@@ -32,7 +32,10 @@ package net.ripe.ipresource;
 import org.apache.commons.lang3.Validate;
 
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.util.*;
 import java.util.Map.Entry;
@@ -75,6 +78,12 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
      */
     TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint;
 
+    /*
+     * Set when the resource map is shared with an ImmutableResourceSet by freeze(). The map is then copied
+     * before it is modified.
+     */
+    private transient boolean shared;
+
     public IpResourceSet() {
         this.resourcesByEndPoint = new TreeMap<>();
     }
@@ -125,6 +134,7 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
             start = start.predecessor();
         }
 
+        copyOnWrite();
         Iterator<IpResource> iterator = resourcesByEndPoint.tailMap(start, true).values().iterator();
         while (iterator.hasNext()) {
             IpResource potentialMatch = iterator.next();
@@ -157,6 +167,54 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
         return true;
     }
 
+    /**
+     * @return the resource in this set that contains the given resource, or null if there is none
+     */
+    public IpResource findContaining(IpResource resource) {
+        return ResourceNavigation.findContaining(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the last resource of the same type in this set that starts at or before the start of the given
+     * resource, or null if there is none
+     */
+    public IpResource floor(IpResource resource) {
+        return ResourceNavigation.floor(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the last resource of the same type in this set that ends before the start of the given resource,
+     * or null if there is none
+     */
+    public IpResource lower(IpResource resource) {
+        return ResourceNavigation.lower(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the first resource of the same type in this set that ends at or after the end of the given
+     * resource, or null if there is none
+     */
+    public IpResource ceiling(IpResource resource) {
+        return ResourceNavigation.ceiling(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * @return the first resource of the same type in this set that starts after the end of the given resource,
+     * or null if there is none
+     */
+    public IpResource higher(IpResource resource) {
+        return ResourceNavigation.higher(resourcesByEndPoint, resource);
+    }
+
+    /**
+     * Returns a view of the resources in this set inside the bound, clipped to the bound. Creating the view
+     * does not copy and iterating it only visits the resources inside the bound. Later changes to this set are
+     * reflected in the view.
+     */
+    public ResourceSubSet subSet(IpResource bound) {
+        return new ResourceSubSet(() -> resourcesByEndPoint, bound);
+    }
+
     public boolean containsType(IpResourceType type) {
         for (IpResource resource: resourcesByEndPoint.values()) {
             if (type == resource.getType()) {
@@ -178,9 +236,51 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
         return result;
     }
 
+    /**
+     * Parses resources from the reader incrementally, so the textual input is never held in memory as a whole.
+     * Resources may be separated by commas, whitespace, and newlines. The reader is not closed.
+     *
+     * @throws IllegalArgumentException the input contains an invalid resource
+     */
+    public static IpResourceSet parse(Reader reader) throws IOException {
+        IpResourceSet result = new IpResourceSet();
+        ResourceTokenizer.parse(reader, result::add);
+        return result;
+    }
+
     @Override
     public Iterator<IpResource> iterator() {
-        return resourcesByEndPoint.values().iterator();
+        TreeMap<UniqueIpResource, IpResource> map = resourcesByEndPoint;
+        Iterator<IpResource> iterator = map.values().iterator();
+        return new Iterator<IpResource>() {
+            private IpResource last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public IpResource next() {
+                last = iterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (map == resourcesByEndPoint && !shared) {
+                    iterator.remove();
+                } else {
+                    // The iterated map is (or was) shared with a frozen set, so remove from this set's own copy
+                    if (last == null) {
+                        throw new IllegalStateException();
+                    }
+                    copyOnWrite();
+                    resourcesByEndPoint.remove(last.getEnd());
+                }
+                last = null;
+            }
+        };
     }
 
     @Override
@@ -193,11 +293,31 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
         return StreamSupport.stream(spliterator(), false);
     }
 
+    /**
+     * @return the minimal set of prefixes covering the IPv4 and IPv6 resources in this set, in ascending order.
+     * ASN resources are skipped. Prefixes are computed lazily while the stream is consumed.
+     */
+    public Stream<IpRange> prefixes() {
+        return prefixes(IpResourceType.IPv4.getBitSize(), IpResourceType.IPv6.getBitSize());
+    }
+
+    /**
+     * Like {@link #prefixes()}, but no prefix is longer than the given maximum length for its type. Ranges are
+     * widened to the boundaries of the prefixes with the maximum length, so the result may cover more addresses
+     * than this set.
+     *
+     * @throws IllegalArgumentException if a maximum prefix length is out of range for its type
+     */
+    public Stream<IpRange> prefixes(int maximumIpv4PrefixLength, int maximumIpv6PrefixLength) {
+        return PrefixIterator.stream(resourcesByEndPoint.values(), maximumIpv4PrefixLength, maximumIpv6PrefixLength);
+    }
+
     public boolean remove(IpResource resource) {
         boolean removed = false;
 
         Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
         while (potentialMatch != null && potentialMatch.getValue().overlaps(resource)) {
+            copyOnWrite();
             resourcesByEndPoint.remove(potentialMatch.getKey());
             removed = true;
 
@@ -221,7 +341,8 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
         if (this.isEmpty()) {
             return;
         } else if (other.isEmpty()) {
-            resourcesByEndPoint.clear();
+            this.resourcesByEndPoint = new TreeMap<>();
+            this.shared = false;
             return;
         }
 
@@ -244,6 +365,26 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
             }
         }
         this.resourcesByEndPoint = temp;
+        this.shared = false;
+    }
+
+    /**
+     * Returns an immutable snapshot of this set in constant time. The storage is shared with the snapshot
+     * until this set is modified next, at which point this set copies its storage first.
+     */
+    public ImmutableResourceSet freeze() {
+        if (isEmpty()) {
+            return ImmutableResourceSet.empty();
+        }
+        shared = true;
+        return new ImmutableResourceSet(resourcesByEndPoint);
+    }
+
+    private void copyOnWrite() {
+        if (shared) {
+            resourcesByEndPoint = new TreeMap<>(resourcesByEndPoint);
+            shared = false;
+        }
     }
 
     @Override
@@ -273,6 +414,18 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
         return resource.isUnique() ? resource.getStart() : resource;
     }
 
+    /*
+     * Only instances of this exact class are written using the serialization proxy, since the proxy cannot
+     * restore the state of subclasses.
+     */
+    private Object writeReplace() {
+        return getClass() == IpResourceSet.class ? new SerializationProxy(this) : this;
+    }
+
+    /*
+     * Reads the default serialized forms used before the introduction of the serialization proxy, and
+     * the default serialized form of subclasses.
+     */
     @SuppressWarnings("unchecked")
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
         ObjectInputStream.GetField gf = in.readFields();
@@ -286,4 +439,38 @@ public class IpResourceSet implements Iterable<IpResource>, Serializable {
             }
         }
     }
+
+    /*
+     * Serialized form of a resource set. Resources are written in their compact primitive form (see
+     * ResourceSetCodec) instead of as a graph of tree map entries and resource objects.
+     */
+    private static final class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient TreeMap<UniqueIpResource, IpResource> resourcesByEndPoint;
+
+        SerializationProxy(IpResourceSet resources) {
+            this.resourcesByEndPoint = resources.resourcesByEndPoint;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            ResourceSetCodec.write(out, resourcesByEndPoint.values());
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            try {
+                resourcesByEndPoint = ResourceSetCodec.read(in).buildMap();
+            } catch (IllegalArgumentException e) {
+                throw (InvalidObjectException) new InvalidObjectException(e.getMessage()).initCause(e);
+            }
+        }
+
+        private Object readResolve() {
+            IpResourceSet result = new IpResourceSet();
+            result.resourcesByEndPoint = resourcesByEndPoint;
+            return result;
+        }
+    }
 }
@@ -0,0 +1,187 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Immutable set of IPv4 addresses, stored as sorted ranges in a flat array of primitive longs. Operations
+ * avoid the type comparisons and object indirections of {@link ImmutableResourceSet}. Use
+ * {@link ImmutableResourceSet#getIpv4Set()} and {@link #toImmutableResourceSet()} to convert between both.
+ */
+public final class Ipv4Set implements Iterable<IpResource> {
+
+    private static final Ipv4Set EMPTY = new Ipv4Set(PrimitiveRanges.EMPTY);
+    private static final Ipv4Set UNIVERSAL = new Ipv4Set(PrimitiveRanges.universe(IpResourceType.IPv4));
+    private static final int WORDS = PrimitiveRanges.words(IpResourceType.IPv4);
+
+    private final long[] bounds;
+
+    private Ipv4Set(long[] bounds) {
+        this.bounds = bounds;
+    }
+
+    private static Ipv4Set of(long[] bounds) {
+        return bounds.length == 0 ? EMPTY : new Ipv4Set(bounds);
+    }
+
+    public static Ipv4Set empty() {
+        return EMPTY;
+    }
+
+    public static Ipv4Set universal() {
+        return UNIVERSAL;
+    }
+
+    /**
+     * @throws IllegalArgumentException some of the resources are not IPv4 addresses
+     */
+    public static Ipv4Set of(Iterable<? extends IpResource> resources) {
+        ImmutableResourceSet set = resources instanceof ImmutableResourceSet ? (ImmutableResourceSet) resources : ImmutableResourceSet.of(resources);
+        Validate.isTrue(!set.containsType(IpResourceType.ASN) && !set.containsType(IpResourceType.IPv6), "resources must all be IPv4 addresses");
+        return partOf(set);
+    }
+
+    /**
+     * @return the IPv4 addresses in the resource set
+     */
+    static Ipv4Set partOf(ImmutableResourceSet resources) {
+        return of(PrimitiveRanges.of(resources, IpResourceType.IPv4));
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        return PrimitiveRanges.toImmutableResourceSet(IpResourceType.IPv4, bounds);
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    /**
+     * @return the number of disjoint, non-adjacent ranges in this set
+     */
+    public int getRangeCount() {
+        return PrimitiveRanges.rangeCount(IpResourceType.IPv4, bounds);
+    }
+
+    /**
+     * @return the range with the given index, in ascending order
+     */
+    public IpResource getRange(int index) {
+        Validate.isTrue(index >= 0 && index < getRangeCount(), "range index out of bounds: %d", index);
+        return PrimitiveRanges.resource(IpResourceType.IPv4, bounds, index);
+    }
+
+    /**
+     * @return the number of addresses in this set
+     */
+    public long getAddressCount() {
+        long result = 0;
+        for (int i = 0; i < bounds.length; i += 2) {
+            result += bounds[i + 1] - bounds[i] + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @param address the address as unsigned 32-bit value
+     */
+    public boolean contains(int address) {
+        return PrimitiveRanges.contains(bounds, Integer.toUnsignedLong(address));
+    }
+
+    /**
+     * @param start the first address as unsigned 32-bit value
+     * @param end the last address (inclusive) as unsigned 32-bit value
+     * @return whether this set contains all addresses from start to end
+     */
+    public boolean contains(int start, int end) {
+        Validate.isTrue(Integer.compareUnsigned(start, end) <= 0, "start must not be after end");
+        int index = PrimitiveRanges.floor(bounds, Integer.toUnsignedLong(start));
+        return index >= 0 && Integer.toUnsignedLong(end) <= bounds[2 * index + 1];
+    }
+
+    /**
+     * @param start the first address as unsigned 32-bit value
+     * @param end the last address (inclusive) as unsigned 32-bit value
+     * @return whether this set contains any address from start to end
+     */
+    public boolean intersects(int start, int end) {
+        Validate.isTrue(Integer.compareUnsigned(start, end) <= 0, "start must not be after end");
+        return PrimitiveRanges.intersects(bounds, Integer.toUnsignedLong(start), Integer.toUnsignedLong(end));
+    }
+
+    public Ipv4Set union(Ipv4Set that) {
+        return that.isEmpty() ? this : isEmpty() ? that : of(PrimitiveRanges.union(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv4Set intersection(Ipv4Set that) {
+        return of(PrimitiveRanges.intersection(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv4Set difference(Ipv4Set that) {
+        return that.isEmpty() ? this : of(PrimitiveRanges.difference(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv4Set complement() {
+        return of(PrimitiveRanges.difference(UNIVERSAL.bounds, bounds, WORDS));
+    }
+
+    public boolean contains(Ipv4Set that) {
+        return PrimitiveRanges.difference(that.bounds, bounds, WORDS).length == 0;
+    }
+
+    public boolean intersects(Ipv4Set that) {
+        return PrimitiveRanges.intersects(bounds, that.bounds, WORDS);
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        return PrimitiveRanges.iterator(IpResourceType.IPv4, bounds);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || obj instanceof Ipv4Set && Arrays.equals(bounds, ((Ipv4Set) obj).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        return toImmutableResourceSet().toString();
+    }
+}
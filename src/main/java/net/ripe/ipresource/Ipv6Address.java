@@ -203,6 +203,40 @@ public class Ipv6Address extends IpAddress {
         return value;
     }
 
+    /**
+     * @return the most significant 64 bits of this address
+     */
+    long highBits() {
+        return value.shiftRight(Long.SIZE).longValue();
+    }
+
+    /**
+     * @return the least significant 64 bits of this address
+     */
+    long lowBits() {
+        return value.longValue();
+    }
+
+    static Ipv6Address fromBits(long highBits, long lowBits) {
+        return new Ipv6Address(new BigInteger(1, ByteBuffer.allocate(16).putLong(highBits).putLong(lowBits).array()));
+    }
+
+    /**
+     * Compares two addresses given as most and least significant 64 bits, as unsigned 128-bit values.
+     */
+    static int compareBits(long leftHigh, long leftLow, long rightHigh, long rightLow) {
+        int rc = Long.compareUnsigned(leftHigh, rightHigh);
+        return rc != 0 ? rc : Long.compareUnsigned(leftLow, rightLow);
+    }
+
+    /**
+     * @return whether the second address directly follows the first, both given as most and least significant 64 bits
+     */
+    static boolean isSuccessorBits(long high, long low, long nextHigh, long nextLow) {
+        long successorLow = low + 1;
+        return nextLow == successorLow && nextHigh == high + (successorLow == 0 ? 1 : 0);
+    }
+
     @Override
     public boolean isValidNetmask() {
         int bitLength = value.bitLength();
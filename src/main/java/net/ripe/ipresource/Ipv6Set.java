@@ -0,0 +1,190 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Immutable set of IPv6 addresses, stored as sorted ranges in a flat array of primitive longs holding the
+ * most and least significant 64 bits of every bound. Operations avoid the type comparisons and object
+ * indirections of {@link ImmutableResourceSet}. Use {@link ImmutableResourceSet#getIpv6Set()} and
+ * {@link #toImmutableResourceSet()} to convert between both.
+ */
+public final class Ipv6Set implements Iterable<IpResource> {
+
+    private static final Ipv6Set EMPTY = new Ipv6Set(PrimitiveRanges.EMPTY);
+    private static final Ipv6Set UNIVERSAL = new Ipv6Set(PrimitiveRanges.universe(IpResourceType.IPv6));
+    private static final int WORDS = PrimitiveRanges.words(IpResourceType.IPv6);
+
+    private final long[] bounds;
+
+    private Ipv6Set(long[] bounds) {
+        this.bounds = bounds;
+    }
+
+    private static Ipv6Set of(long[] bounds) {
+        return bounds.length == 0 ? EMPTY : new Ipv6Set(bounds);
+    }
+
+    public static Ipv6Set empty() {
+        return EMPTY;
+    }
+
+    public static Ipv6Set universal() {
+        return UNIVERSAL;
+    }
+
+    /**
+     * @throws IllegalArgumentException some of the resources are not IPv6 addresses
+     */
+    public static Ipv6Set of(Iterable<? extends IpResource> resources) {
+        ImmutableResourceSet set = resources instanceof ImmutableResourceSet ? (ImmutableResourceSet) resources : ImmutableResourceSet.of(resources);
+        Validate.isTrue(!set.containsType(IpResourceType.ASN) && !set.containsType(IpResourceType.IPv4), "resources must all be IPv6 addresses");
+        return partOf(set);
+    }
+
+    /**
+     * @return the IPv6 addresses in the resource set
+     */
+    static Ipv6Set partOf(ImmutableResourceSet resources) {
+        return of(PrimitiveRanges.of(resources, IpResourceType.IPv6));
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        return PrimitiveRanges.toImmutableResourceSet(IpResourceType.IPv6, bounds);
+    }
+
+    public boolean isEmpty() {
+        return bounds.length == 0;
+    }
+
+    /**
+     * @return the number of disjoint, non-adjacent ranges in this set
+     */
+    public int getRangeCount() {
+        return PrimitiveRanges.rangeCount(IpResourceType.IPv6, bounds);
+    }
+
+    /**
+     * @return the range with the given index, in ascending order
+     */
+    public IpResource getRange(int index) {
+        Validate.isTrue(index >= 0 && index < getRangeCount(), "range index out of bounds: %d", index);
+        return PrimitiveRanges.resource(IpResourceType.IPv6, bounds, index);
+    }
+
+    /**
+     * @return the number of addresses in this set
+     */
+    public BigInteger getAddressCount() {
+        AddressCounter counter = new AddressCounter();
+        for (int i = 0; i < bounds.length; i += 4) {
+            counter.addIpv6(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]);
+        }
+        return counter.toBigInteger();
+    }
+
+    /**
+     * @param high the most significant 64 bits of the address
+     * @param low the least significant 64 bits of the address
+     */
+    public boolean contains(long high, long low) {
+        return PrimitiveRanges.contains(bounds, high, low);
+    }
+
+    /**
+     * @return whether this set contains all addresses from start to end (inclusive), each given as most and
+     * least significant 64 bits
+     */
+    public boolean contains(long startHigh, long startLow, long endHigh, long endLow) {
+        Validate.isTrue(Ipv6Address.compareBits(startHigh, startLow, endHigh, endLow) <= 0, "start must not be after end");
+        int index = PrimitiveRanges.floor(bounds, startHigh, startLow);
+        return index >= 0 && Ipv6Address.compareBits(endHigh, endLow, bounds[4 * index + 2], bounds[4 * index + 3]) <= 0;
+    }
+
+    /**
+     * @return whether this set contains any address from start to end (inclusive), each given as most and
+     * least significant 64 bits
+     */
+    public boolean intersects(long startHigh, long startLow, long endHigh, long endLow) {
+        Validate.isTrue(Ipv6Address.compareBits(startHigh, startLow, endHigh, endLow) <= 0, "start must not be after end");
+        int index = PrimitiveRanges.floor(bounds, endHigh, endLow);
+        return index >= 0 && Ipv6Address.compareBits(startHigh, startLow, bounds[4 * index + 2], bounds[4 * index + 3]) <= 0;
+    }
+
+
+    public Ipv6Set union(Ipv6Set that) {
+        return that.isEmpty() ? this : isEmpty() ? that : of(PrimitiveRanges.union(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv6Set intersection(Ipv6Set that) {
+        return of(PrimitiveRanges.intersection(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv6Set difference(Ipv6Set that) {
+        return that.isEmpty() ? this : of(PrimitiveRanges.difference(bounds, that.bounds, WORDS));
+    }
+
+    public Ipv6Set complement() {
+        return of(PrimitiveRanges.difference(UNIVERSAL.bounds, bounds, WORDS));
+    }
+
+    public boolean contains(Ipv6Set that) {
+        return PrimitiveRanges.difference(that.bounds, bounds, WORDS).length == 0;
+    }
+
+    public boolean intersects(Ipv6Set that) {
+        return PrimitiveRanges.intersects(bounds, that.bounds, WORDS);
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        return PrimitiveRanges.iterator(IpResourceType.IPv6, bounds);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || obj instanceof Ipv6Set && Arrays.equals(bounds, ((Ipv6Set) obj).bounds);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bounds);
+    }
+
+    @Override
+    public String toString() {
+        return toImmutableResourceSet().toString();
+    }
+}
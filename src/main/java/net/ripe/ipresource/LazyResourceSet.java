@@ -0,0 +1,203 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * A resource set that is parsed from its textual or binary form when it is first accessed. This keeps
+ * loading many resource sets cheap when most of them are never queried.
+ * <p>
+ * Equality and hash code are based on the canonical binary form (see {@link #encode(ImmutableResourceSet)}),
+ * so sets created from their binary form are compared without being parsed. Sets created from text are
+ * parsed to compute their binary form. Parsing is thread-safe and happens at most once.
+ * </p>
+ */
+public final class LazyResourceSet implements Iterable<IpResource> {
+
+    private String text;
+    private volatile byte[] encoded;
+    private volatile ImmutableResourceSet resources;
+
+    private LazyResourceSet(String text, byte[] encoded) {
+        this.text = text;
+        this.encoded = encoded;
+    }
+
+    /**
+     * @param text resources in the format of {@link ImmutableResourceSet#parse(String)}, which is only
+     *             validated when the set is accessed
+     */
+    public static LazyResourceSet fromText(String text) {
+        return new LazyResourceSet(Validate.notNull(text, "text is null"), null);
+    }
+
+    /**
+     * @param encoded the canonical binary form of a resource set, as returned by {@link #encode(ImmutableResourceSet)}.
+     *                Encodings that are invalid or not canonical are rejected when the set is accessed.
+     */
+    public static LazyResourceSet fromEncoded(byte[] encoded) {
+        return new LazyResourceSet(null, Validate.notNull(encoded, "encoded is null").clone());
+    }
+
+    public static LazyResourceSet of(ImmutableResourceSet resources) {
+        LazyResourceSet result = new LazyResourceSet(null, null);
+        result.resources = Validate.notNull(resources, "resources is null");
+        return result;
+    }
+
+    /**
+     * @return the canonical binary form of the resource set
+     */
+    public static byte[] encode(ImmutableResourceSet resources) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ResourceSetCodec.write(new DataOutputStream(bytes), resources.resourcesByEndPoint.values());
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return whether the resources have been parsed already
+     */
+    public boolean isMaterialized() {
+        return resources != null;
+    }
+
+    /**
+     * @return the parsed resources
+     * @throws IllegalArgumentException the textual or binary form is invalid
+     */
+    public ImmutableResourceSet get() {
+        ImmutableResourceSet result = resources;
+        if (result == null) {
+            synchronized (this) {
+                result = resources;
+                if (result == null) {
+                    result = text != null ? ImmutableResourceSet.parse(text) : decode(encoded);
+                    resources = result;
+                    text = null;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a copy of the canonical binary form of the resources
+     */
+    public byte[] getEncoded() {
+        return encoded().clone();
+    }
+
+    private byte[] encoded() {
+        byte[] result = encoded;
+        if (result == null) {
+            result = encode(get());
+            encoded = result;
+        }
+        return result;
+    }
+
+    private static ImmutableResourceSet decode(byte[] encoded) {
+        ImmutableResourceSet result;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            result = ResourceSetCodec.read(in).build();
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("trailing data after encoded resource set");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("truncated encoded resource set", e);
+        }
+        if (!Arrays.equals(encoded, encode(result))) {
+            throw new IllegalArgumentException("encoded resource set is not canonical");
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return get().isEmpty();
+    }
+
+    public boolean contains(IpResource resource) {
+        return get().contains(resource);
+    }
+
+    public boolean contains(Iterable<? extends IpResource> other) {
+        return get().contains(other);
+    }
+
+    public boolean intersects(IpResource resource) {
+        return get().intersects(resource);
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        return get().iterator();
+    }
+
+    public Stream<IpResource> stream() {
+        return get().stream();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof LazyResourceSet)) {
+            return false;
+        }
+        return Arrays.equals(encoded(), ((LazyResourceSet) obj).encoded());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(encoded());
+    }
+
+    @Override
+    public String toString() {
+        return get().toString();
+    }
+}
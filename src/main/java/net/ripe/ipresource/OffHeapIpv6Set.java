@@ -0,0 +1,456 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of IPv6 ranges stored outside of the Java heap, for very large sets that would otherwise put
+ * hundreds of millions of objects on the heap. Ranges are stored as sorted, disjoint and non-adjacent 32-byte
+ * records (the most and least significant 64 bits of start and end) in direct byte buffers. A single buffer is
+ * limited to 2 GiB, so records are spread over chunks of {@value #DEFAULT_RECORDS_PER_CHUNK} records.
+ * <p>
+ * Lookups use binary search over the records. Set operations stream the records of both sets into a new set
+ * in a single pass. Resources are only created at the API edges, when converting from and to
+ * {@link IpResource}s.
+ * </p>
+ * <p>
+ * Sets must be closed when no longer used. Closing releases the buffers, after which every operation fails with
+ * an {@link IllegalStateException}. The memory itself is returned once the garbage collector has reclaimed
+ * the buffers. Lookups are thread safe, closing a set while it is used is not.
+ * </p>
+ */
+public final class OffHeapIpv6Set implements Iterable<IpResource>, AutoCloseable {
+
+    static final int DEFAULT_RECORDS_PER_CHUNK = 1 << 24;
+
+    private static final int RECORD_SIZE = 4 * Long.BYTES;
+    private static final int INITIAL_CHUNK_RECORDS = 1 << 10;
+
+    private final int recordsPerChunk;
+    private final long rangeCount;
+    private final ByteBuffer[] chunks;
+    private volatile boolean closed;
+
+    private OffHeapIpv6Set(int recordsPerChunk, ByteBuffer[] chunks, long rangeCount) {
+        this.recordsPerChunk = recordsPerChunk;
+        this.chunks = chunks;
+        this.rangeCount = rangeCount;
+    }
+
+    /**
+     * Creates a set from the resources. Resources of an {@link ImmutableResourceSet}, {@link Ipv6Set} or
+     * {@link OffHeapIpv6Set} are already sorted and are streamed into the set directly. Other resources are first
+     * sorted and merged into an {@link Ipv6Set} on the heap, so use a {@link Builder} to create very large sets
+     * from resources in ascending order.
+     *
+     * @throws IllegalArgumentException some of the resources are not IPv6 addresses
+     */
+    public static OffHeapIpv6Set of(Iterable<? extends IpResource> resources) {
+        boolean sorted = resources instanceof ImmutableResourceSet || resources instanceof Ipv6Set || resources instanceof OffHeapIpv6Set;
+        Builder builder = new Builder();
+        for (IpResource resource : sorted ? resources : Ipv6Set.of(resources)) {
+            builder.add(resource);
+        }
+        return builder.build();
+    }
+
+    public long getRangeCount() {
+        return rangeCount;
+    }
+
+    public boolean isEmpty() {
+        return rangeCount == 0;
+    }
+
+    /**
+     * @return the range with the given index, in ascending order
+     */
+    public IpResource getRange(long index) {
+        Validate.isTrue(index >= 0 && index < rangeCount, "range index out of bounds: %d", index);
+        return toResource(index);
+    }
+
+    /**
+     * @param high the most significant 64 bits of the address
+     * @param low the least significant 64 bits of the address
+     */
+    public boolean contains(long high, long low) {
+        long index = floor(high, low);
+        return index >= 0 && Ipv6Address.compareBits(high, low, endHigh(index), endLow(index)) <= 0;
+    }
+
+    /**
+     * @return whether this set contains all of the resource, which is never the case for resources other than
+     * IPv6 addresses
+     */
+    public boolean contains(IpResource resource) {
+        if (resource.getType() != IpResourceType.IPv6) {
+            checkOpen();
+            return false;
+        }
+        Ipv6Address start = (Ipv6Address) resource.getStart();
+        Ipv6Address end = (Ipv6Address) resource.getEnd();
+        long index = floor(start.highBits(), start.lowBits());
+        return index >= 0 && Ipv6Address.compareBits(end.highBits(), end.lowBits(), endHigh(index), endLow(index)) <= 0;
+    }
+
+    public boolean intersects(IpResource resource) {
+        if (resource.getType() != IpResourceType.IPv6) {
+            checkOpen();
+            return false;
+        }
+        Ipv6Address start = (Ipv6Address) resource.getStart();
+        Ipv6Address end = (Ipv6Address) resource.getEnd();
+        long index = floor(end.highBits(), end.lowBits());
+        return index >= 0 && Ipv6Address.compareBits(start.highBits(), start.lowBits(), endHigh(index), endLow(index)) <= 0;
+    }
+
+    public OffHeapIpv6Set union(OffHeapIpv6Set that) {
+        checkOpen();
+        that.checkOpen();
+        Builder result = new Builder(recordsPerChunk);
+        long i = 0;
+        long j = 0;
+        while (i < rangeCount && j < that.rangeCount) {
+            if (Ipv6Address.compareBits(startHigh(i), startLow(i), that.startHigh(j), that.startLow(j)) <= 0) {
+                result.add(startHigh(i), startLow(i), endHigh(i), endLow(i));
+                ++i;
+            } else {
+                result.add(that.startHigh(j), that.startLow(j), that.endHigh(j), that.endLow(j));
+                ++j;
+            }
+        }
+        for (; i < rangeCount; ++i) {
+            result.add(startHigh(i), startLow(i), endHigh(i), endLow(i));
+        }
+        for (; j < that.rangeCount; ++j) {
+            result.add(that.startHigh(j), that.startLow(j), that.endHigh(j), that.endLow(j));
+        }
+        return result.build();
+    }
+
+    public OffHeapIpv6Set intersection(OffHeapIpv6Set that) {
+        checkOpen();
+        that.checkOpen();
+        Builder result = new Builder(recordsPerChunk);
+        long i = 0;
+        long j = 0;
+        while (i < rangeCount && j < that.rangeCount) {
+            boolean thisStartsLast = Ipv6Address.compareBits(startHigh(i), startLow(i), that.startHigh(j), that.startLow(j)) >= 0;
+            long startHigh = thisStartsLast ? startHigh(i) : that.startHigh(j);
+            long startLow = thisStartsLast ? startLow(i) : that.startLow(j);
+            long endHigh;
+            long endLow;
+            if (Ipv6Address.compareBits(endHigh(i), endLow(i), that.endHigh(j), that.endLow(j)) <= 0) {
+                endHigh = endHigh(i);
+                endLow = endLow(i);
+                ++i;
+            } else {
+                endHigh = that.endHigh(j);
+                endLow = that.endLow(j);
+                ++j;
+            }
+            if (Ipv6Address.compareBits(startHigh, startLow, endHigh, endLow) <= 0) {
+                result.add(startHigh, startLow, endHigh, endLow);
+            }
+        }
+        return result.build();
+    }
+
+    public OffHeapIpv6Set difference(OffHeapIpv6Set that) {
+        checkOpen();
+        that.checkOpen();
+        Builder result = new Builder(recordsPerChunk);
+        long j = 0;
+        for (long i = 0; i < rangeCount; ++i) {
+            long startHigh = startHigh(i);
+            long startLow = startLow(i);
+            long endHigh = endHigh(i);
+            long endLow = endLow(i);
+            while (j < that.rangeCount && Ipv6Address.compareBits(that.endHigh(j), that.endLow(j), startHigh, startLow) < 0) {
+                ++j;
+            }
+            boolean covered = false;
+            for (; j < that.rangeCount && Ipv6Address.compareBits(that.startHigh(j), that.startLow(j), endHigh, endLow) <= 0; ++j) {
+                long cutHigh = that.startHigh(j);
+                long cutLow = that.startLow(j);
+                if (Ipv6Address.compareBits(cutHigh, cutLow, startHigh, startLow) > 0) {
+                    result.add(startHigh, startLow, cutHigh - (cutLow == 0 ? 1 : 0), cutLow - 1);
+                }
+                long resumeHigh = that.endHigh(j);
+                long resumeLow = that.endLow(j);
+                if (Ipv6Address.compareBits(resumeHigh, resumeLow, endHigh, endLow) >= 0) {
+                    covered = true;
+                    break;
+                }
+                startLow = resumeLow + 1;
+                startHigh = resumeHigh + (startLow == 0 ? 1 : 0);
+            }
+            if (!covered) {
+                result.add(startHigh, startLow, endHigh, endLow);
+            }
+        }
+        return result.build();
+    }
+
+    public Ipv6Set toIpv6Set() {
+        return Ipv6Set.of(this);
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        checkOpen();
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder((int) Math.min(rangeCount, Integer.MAX_VALUE));
+        for (IpResource resource : this) {
+            builder.append(resource);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        checkOpen();
+        return new Iterator<IpResource>() {
+            private long index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < rangeCount;
+            }
+
+            @Override
+            public IpResource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return toResource(index++);
+            }
+        };
+    }
+
+    /**
+     * Releases the buffers of this set. Closing a set more than once has no effect.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Arrays.fill(chunks, null);
+    }
+
+    @Override
+    public String toString() {
+        return toImmutableResourceSet().toString();
+    }
+
+    private IpResource toResource(long index) {
+        Ipv6Address start = Ipv6Address.fromBits(startHigh(index), startLow(index));
+        Ipv6Address end = Ipv6Address.fromBits(endHigh(index), endLow(index));
+        return ImmutableResourceSet.normalize(IpRange.range(start, end));
+    }
+
+    /**
+     * @return the index of the last range starting at or before the address, or -1
+     */
+    private long floor(long high, long low) {
+        checkOpen();
+        long lowIndex = 0;
+        long highIndex = rangeCount - 1;
+        while (lowIndex <= highIndex) {
+            long middle = (lowIndex + highIndex) >>> 1;
+            if (Ipv6Address.compareBits(startHigh(middle), startLow(middle), high, low) <= 0) {
+                lowIndex = middle + 1;
+            } else {
+                highIndex = middle - 1;
+            }
+        }
+        return highIndex;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("set is closed");
+        }
+    }
+
+    private long field(long index, int field) {
+        ByteBuffer chunk = chunks[(int) (index / recordsPerChunk)];
+        return chunk.getLong((int) (index % recordsPerChunk) * RECORD_SIZE + field * Long.BYTES);
+    }
+
+    private long startHigh(long index) {
+        return field(index, 0);
+    }
+
+    private long startLow(long index) {
+        return field(index, 1);
+    }
+
+    private long endHigh(long index) {
+        return field(index, 2);
+    }
+
+    private long endLow(long index) {
+        return field(index, 3);
+    }
+
+    /**
+     * Builds an off-heap set from ranges added in ascending order of their start. Overlapping and adjacent ranges
+     * are merged. A builder can only be used once.
+     */
+    public static final class Builder {
+        private final int recordsPerChunk;
+        private List<ByteBuffer> chunks = new ArrayList<>();
+        private long count;
+        private long lastStartHigh;
+        private long lastStartLow;
+        private long lastEndHigh;
+        private long lastEndLow;
+
+        public Builder() {
+            this(DEFAULT_RECORDS_PER_CHUNK);
+        }
+
+        Builder(int recordsPerChunk) {
+            Validate.isTrue(recordsPerChunk > 0 && recordsPerChunk <= Integer.MAX_VALUE / RECORD_SIZE, "invalid number of records per chunk");
+            this.recordsPerChunk = recordsPerChunk;
+        }
+
+        /**
+         * @throws IllegalArgumentException the resource is not an IPv6 resource, or starts before a range added before
+         */
+        public Builder add(IpResource resource) {
+            Validate.isTrue(resource.getType() == IpResourceType.IPv6, "resource must be IPv6: %s", resource);
+            Ipv6Address start = (Ipv6Address) resource.getStart();
+            Ipv6Address end = (Ipv6Address) resource.getEnd();
+            return add(start.highBits(), start.lowBits(), end.highBits(), end.lowBits());
+        }
+
+        /**
+         * Adds the range with the given start and end (inclusive), each given as most and least significant 64 bits.
+         *
+         * @throws IllegalArgumentException the start is after the end, or before the start of a range added before
+         */
+        public Builder add(long startHigh, long startLow, long endHigh, long endLow) {
+            if (chunks == null) {
+                throw new IllegalStateException("builder can only be used once");
+            }
+            Validate.isTrue(Ipv6Address.compareBits(startHigh, startLow, endHigh, endLow) <= 0, "start must not be after end");
+            if (count > 0) {
+                Validate.isTrue(Ipv6Address.compareBits(startHigh, startLow, lastStartHigh, lastStartLow) >= 0, "ranges must be added in ascending order");
+                if (Ipv6Address.compareBits(startHigh, startLow, lastEndHigh, lastEndLow) <= 0 || Ipv6Address.isSuccessorBits(lastEndHigh, lastEndLow, startHigh, startLow)) {
+                    if (Ipv6Address.compareBits(endHigh, endLow, lastEndHigh, lastEndLow) > 0) {
+                        lastEndHigh = endHigh;
+                        lastEndLow = endLow;
+                        write(count - 1, 2, endHigh);
+                        write(count - 1, 3, endLow);
+                    }
+                    return this;
+                }
+            }
+            ensureCapacity(count + 1);
+            write(count, 0, startHigh);
+            write(count, 1, startLow);
+            write(count, 2, endHigh);
+            write(count, 3, endLow);
+            ++count;
+            lastStartHigh = startHigh;
+            lastStartLow = startLow;
+            lastEndHigh = endHigh;
+            lastEndLow = endLow;
+            return this;
+        }
+
+        public OffHeapIpv6Set build() {
+            if (chunks == null) {
+                throw new IllegalStateException("builder can only be used once");
+            }
+            try {
+                trimLastChunk();
+                return new OffHeapIpv6Set(recordsPerChunk, chunks.toArray(new ByteBuffer[0]), count);
+            } finally {
+                chunks = null;
+            }
+        }
+
+        /*
+         * The last chunk grows by doubling until it holds a full chunk of records, after which new chunks are
+         * allocated at full size.
+         */
+        private void ensureCapacity(long records) {
+            int lastChunk = chunks.size() - 1;
+            long capacity = (long) lastChunk * recordsPerChunk + (lastChunk < 0 ? 0 : chunks.get(lastChunk).capacity() / RECORD_SIZE);
+            if (records <= capacity) {
+                return;
+            }
+            if (lastChunk >= 0 && chunks.get(lastChunk).capacity() < recordsPerChunk * RECORD_SIZE) {
+                ByteBuffer old = chunks.get(lastChunk);
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.min(recordsPerChunk, 2 * old.capacity() / RECORD_SIZE) * RECORD_SIZE);
+                // Through Buffer, as the covariant ByteBuffer overrides do not exist on Java 8
+                ((Buffer) old).clear();
+                grown.put(old);
+                chunks.set(lastChunk, grown);
+            } else {
+                chunks.add(ByteBuffer.allocateDirect(Math.min(recordsPerChunk, INITIAL_CHUNK_RECORDS) * RECORD_SIZE));
+            }
+        }
+
+        /*
+         * Copies the last chunk into a buffer that holds exactly its records, so built sets do not keep up to
+         * half of a grown chunk unused.
+         */
+        private void trimLastChunk() {
+            int lastChunk = chunks.size() - 1;
+            if (lastChunk < 0) {
+                return;
+            }
+            int size = (int) (count - (long) lastChunk * recordsPerChunk) * RECORD_SIZE;
+            ByteBuffer old = chunks.get(lastChunk);
+            if (size < old.capacity()) {
+                ByteBuffer trimmed = ByteBuffer.allocateDirect(size);
+                ((Buffer) old).clear().limit(size);
+                trimmed.put(old);
+                chunks.set(lastChunk, trimmed);
+            }
+        }
+
+        private void write(long index, int field, long value) {
+            ByteBuffer chunk = chunks.get((int) (index / recordsPerChunk));
+            chunk.putLong((int) (index % recordsPerChunk) * RECORD_SIZE + field * Long.BYTES, value);
+        }
+    }
+}
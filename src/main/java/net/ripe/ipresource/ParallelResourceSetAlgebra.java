@@ -0,0 +1,156 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a linear sweep over two resource maps in parallel. The resource space is cut into partitions at the
+ * starts of evenly spaced resources of the larger map, so every partition holds about the same number of
+ * resources. Resources crossing a cut are clipped to the partitions they cover. The partitions are swept on the
+ * common {@link ForkJoinPool}, and their results are appended in order to a {@link SortedResourceSetBuilder},
+ * which merges the resources that touch at the cuts again.
+ */
+final class ParallelResourceSetAlgebra {
+
+    /*
+     * Below this number of resources a sequential sweep is faster than partitioning.
+     */
+    static final int MINIMUM_PARALLEL_SIZE = 1 << 14;
+
+    /*
+     * Partitions per worker thread, to even out partitions that take longer than others.
+     */
+    private static final int PARTITIONS_PER_THREAD = 4;
+
+    @FunctionalInterface
+    interface Sweep {
+        void apply(Iterator<IpResource> left, Iterator<IpResource> right, Consumer<IpResource> result);
+    }
+
+    private ParallelResourceSetAlgebra() {
+    }
+
+    static ImmutableResourceSet apply(NavigableMap<UniqueIpResource, IpResource> left, NavigableMap<UniqueIpResource, IpResource> right, Sweep sweep) {
+        NavigableMap<UniqueIpResource, IpResource> larger = left.size() >= right.size() ? left : right;
+        int partitionCount = Math.min(larger.size() / (MINIMUM_PARALLEL_SIZE / PARTITIONS_PER_THREAD), ForkJoinPool.getCommonPoolParallelism() * PARTITIONS_PER_THREAD);
+        List<UniqueIpResource> cuts = cuts(larger, partitionCount);
+
+        List<List<IpResource>> partitions = IntStream.rangeClosed(0, cuts.size())
+            .parallel()
+            .mapToObj(partition -> {
+                UniqueIpResource from = partition == 0 ? null : cuts.get(partition - 1);
+                UniqueIpResource to = partition == cuts.size() ? null : cuts.get(partition);
+                List<IpResource> result = new ArrayList<>();
+                sweep.apply(new PartitionIterator(left, from, to), new PartitionIterator(right, from, to), result::add);
+                return result;
+            })
+            .collect(Collectors.toList());
+
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder(left.size() + right.size());
+        for (List<IpResource> partition : partitions) {
+            builder.appendAll(partition);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the starts of the resources that cut the map into the given number of partitions of equal size
+     */
+    private static List<UniqueIpResource> cuts(NavigableMap<UniqueIpResource, IpResource> resources, int partitionCount) {
+        List<UniqueIpResource> result = new ArrayList<>(Math.max(0, partitionCount - 1));
+        if (partitionCount <= 1) {
+            return result;
+        }
+        int partitionSize = resources.size() / partitionCount;
+        int index = 0;
+        for (IpResource resource : resources.values()) {
+            if (index > 0 && index % partitionSize == 0 && result.size() < partitionCount - 1) {
+                result.add(resource.getStart());
+            }
+            ++index;
+        }
+        return result;
+    }
+
+    /**
+     * Iterates over the resources of a map that intersect the partition from {@code from} (inclusive) to
+     * {@code to} (exclusive), clipped to the partition. A {@code null} bound leaves that side open.
+     */
+    private static final class PartitionIterator implements Iterator<IpResource> {
+        private final Iterator<IpResource> resources;
+        private final UniqueIpResource from;
+        private final UniqueIpResource to;
+        private IpResource next;
+
+        PartitionIterator(NavigableMap<UniqueIpResource, IpResource> map, UniqueIpResource from, UniqueIpResource to) {
+            this.resources = (from == null ? map : map.tailMap(from, true)).values().iterator();
+            this.from = from;
+            this.to = to;
+            this.next = advance();
+        }
+
+        private IpResource advance() {
+            if (!resources.hasNext()) {
+                return null;
+            }
+            IpResource resource = resources.next();
+            if (to != null && resource.getStart().compareTo(to) >= 0) {
+                return null;
+            }
+            UniqueIpResource start = from != null && resource.getStart().compareTo(from) < 0 ? from : resource.getStart();
+            UniqueIpResource end = to != null && resource.getEnd().compareTo(to) >= 0 ? to.predecessor() : resource.getEnd();
+            return start == resource.getStart() && end == resource.getEnd() ? resource : ImmutableResourceSet.normalize(start.upTo(end));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public IpResource next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            IpResource result = next;
+            next = advance();
+            return result;
+        }
+    }
+}
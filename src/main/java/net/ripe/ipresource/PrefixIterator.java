@@ -0,0 +1,238 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazily decomposes ascending, non-overlapping IP resources into their minimal
+ * prefix cover. Address values are handled as unsigned 128-bit numbers split in
+ * two longs, so there are no intermediate lists and no {@code BigInteger}
+ * arithmetic.
+ * <p>
+ * When a maximum prefix length is given for a resource type, every range is
+ * first widened to the boundaries of the prefixes of that length, so longer
+ * prefixes are replaced by their covering prefix. ASN resources are skipped.
+ * </p>
+ */
+final class PrefixIterator implements Iterator<IpRange> {
+
+    private final Iterator<? extends IpResource> resources;
+    private final int maximumIpv4PrefixLength;
+    private final int maximumIpv6PrefixLength;
+
+    private IpResource lookahead;
+
+    private IpResourceType type;
+    private PrefixSplitter splitter;
+
+    PrefixIterator(Iterator<? extends IpResource> resources, int maximumIpv4PrefixLength, int maximumIpv6PrefixLength) {
+        if (maximumIpv4PrefixLength < 0 || maximumIpv4PrefixLength > IpResourceType.IPv4.getBitSize()) {
+            throw new IllegalArgumentException("illegal maximum IPv4 prefix length: " + maximumIpv4PrefixLength);
+        }
+        if (maximumIpv6PrefixLength < 0 || maximumIpv6PrefixLength > IpResourceType.IPv6.getBitSize()) {
+            throw new IllegalArgumentException("illegal maximum IPv6 prefix length: " + maximumIpv6PrefixLength);
+        }
+        this.resources = resources;
+        this.maximumIpv4PrefixLength = maximumIpv4PrefixLength;
+        this.maximumIpv6PrefixLength = maximumIpv6PrefixLength;
+    }
+
+    static Stream<IpRange> stream(Iterable<? extends IpResource> resources, int maximumIpv4PrefixLength, int maximumIpv6PrefixLength) {
+        PrefixIterator iterator = new PrefixIterator(resources.iterator(), maximumIpv4PrefixLength, maximumIpv6PrefixLength);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+            Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return (splitter != null && splitter.hasNext()) || fill();
+    }
+
+    @Override
+    public IpRange next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        long startHigh = splitter.startHigh();
+        long startLow = splitter.startLow();
+        int hostBits = splitter.next();
+        return IpRange.range(address(startHigh, startLow), address(startHigh | mask(hostBits - Long.SIZE), startLow | mask(hostBits)));
+    }
+
+    /*
+     * Loads the next range to decompose, widened to the maximum prefix length of its type and merged
+     * with following ranges that overlap or touch it after widening.
+     */
+    private boolean fill() {
+        IpResource resource = nextIpResource();
+        if (resource == null) {
+            return false;
+        }
+        type = resource.getType();
+        int hostBits = type.getBitSize() - maximumPrefixLength(type);
+        long startHigh = highBits(resource.getStart()) & ~mask(hostBits - Long.SIZE);
+        long startLow = lowBits(resource.getStart()) & ~mask(hostBits);
+        long endHigh = highBits(resource.getEnd()) | mask(hostBits - Long.SIZE);
+        long endLow = lowBits(resource.getEnd()) | mask(hostBits);
+
+        while ((lookahead = nextIpResource()) != null && lookahead.getType() == type) {
+            long nextStartHigh = highBits(lookahead.getStart()) & ~mask(hostBits - Long.SIZE);
+            long nextStartLow = lowBits(lookahead.getStart()) & ~mask(hostBits);
+            boolean adjacent = Ipv6Address.isSuccessorBits(endHigh, endLow, nextStartHigh, nextStartLow);
+            if (!adjacent && Ipv6Address.compareBits(nextStartHigh, nextStartLow, endHigh, endLow) > 0) {
+                break;
+            }
+            endHigh = highBits(lookahead.getEnd()) | mask(hostBits - Long.SIZE);
+            endLow = lowBits(lookahead.getEnd()) | mask(hostBits);
+            lookahead = null;
+        }
+        splitter = new PrefixSplitter(type.getBitSize(), startHigh, startLow, endHigh, endLow);
+        return true;
+    }
+
+    private IpResource nextIpResource() {
+        if (lookahead != null) {
+            IpResource result = lookahead;
+            lookahead = null;
+            return result;
+        }
+        while (resources.hasNext()) {
+            IpResource resource = resources.next();
+            if (resource.getType() != IpResourceType.ASN) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    private int maximumPrefixLength(IpResourceType type) {
+        return type == IpResourceType.IPv4 ? maximumIpv4PrefixLength : maximumIpv6PrefixLength;
+    }
+
+    /*
+     * Mask of the given number of least significant bits of a long, where negative is none and 64 or more is all.
+     */
+    private static long mask(int bits) {
+        return bits <= 0 ? 0 : bits >= Long.SIZE ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * Splits a range, given as unsigned 128-bit values, into the prefixes of its minimal prefix cover in
+     * ascending order. Every prefix is the largest block aligned at the remaining start that does not extend
+     * past the end.
+     */
+    static final class PrefixSplitter {
+        private final int bitSize;
+        private final long endHigh;
+        private final long endLow;
+        private long startHigh;
+        private long startLow;
+        private boolean done;
+
+        PrefixSplitter(int bitSize, long startHigh, long startLow, long endHigh, long endLow) {
+            this.bitSize = bitSize;
+            this.startHigh = startHigh;
+            this.startLow = startLow;
+            this.endHigh = endHigh;
+            this.endLow = endLow;
+        }
+
+        boolean hasNext() {
+            return !done;
+        }
+
+        /**
+         * @return the most significant 64 bits of the start of the next prefix
+         */
+        long startHigh() {
+            return startHigh;
+        }
+
+        /**
+         * @return the least significant 64 bits of the start of the next prefix
+         */
+        long startLow() {
+            return startLow;
+        }
+
+        /**
+         * @return the number of host bits of the next prefix, which starts at the current start
+         */
+        int next() {
+            int hostBits = Math.min(Math.min(trailingZeros(startHigh, startLow), bitSize), sizeBits());
+            long prefixEndHigh = startHigh | mask(hostBits - Long.SIZE);
+            long prefixEndLow = startLow | mask(hostBits);
+            if (prefixEndHigh == endHigh && prefixEndLow == endLow) {
+                done = true;
+            } else {
+                startLow = prefixEndLow + 1;
+                startHigh = startLow == 0 ? prefixEndHigh + 1 : prefixEndHigh;
+            }
+            return hostBits;
+        }
+
+        /*
+         * The number of bits of the largest power of two that is not bigger than the remaining size (end - start + 1).
+         */
+        private int sizeBits() {
+            long differenceLow = endLow - startLow;
+            long differenceHigh = endHigh - startHigh - (Long.compareUnsigned(endLow, startLow) < 0 ? 1 : 0);
+            if (differenceHigh == -1L && differenceLow == -1L) {
+                return 2 * Long.SIZE;
+            }
+            long sizeLow = differenceLow + 1;
+            long sizeHigh = sizeLow == 0 ? differenceHigh + 1 : differenceHigh;
+            return sizeHigh != 0 ? 2 * Long.SIZE - 1 - Long.numberOfLeadingZeros(sizeHigh) : Long.SIZE - 1 - Long.numberOfLeadingZeros(sizeLow);
+        }
+
+        private static int trailingZeros(long high, long low) {
+            return low != 0 ? Long.numberOfTrailingZeros(low) : Long.SIZE + Long.numberOfTrailingZeros(high);
+        }
+    }
+
+    private static long highBits(UniqueIpResource address) {
+        return address instanceof Ipv6Address ? ((Ipv6Address) address).highBits() : 0;
+    }
+
+    private static long lowBits(UniqueIpResource address) {
+        return address instanceof Ipv6Address ? ((Ipv6Address) address).lowBits() : ((Ipv4Address) address).longValue();
+    }
+
+    private IpAddress address(long high, long low) {
+        return type == IpResourceType.IPv4 ? new Ipv4Address(low) : Ipv6Address.fromBits(high, low);
+    }
+}
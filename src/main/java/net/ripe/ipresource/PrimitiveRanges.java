@@ -0,0 +1,435 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Set algebra on ranges of a single resource type stored in a flat long array. Every range is stored as its
+ * start followed by its end. A bound takes one word for ASNs and IPv4 addresses (the unsigned 32-bit value) or
+ * two words for IPv6 addresses (the most and least significant 64 bits). Ranges are sorted, disjoint and not
+ * adjacent, so equal sets have equal arrays.
+ */
+final class PrimitiveRanges {
+
+    static final long[] EMPTY = new long[0];
+
+    private PrimitiveRanges() {
+    }
+
+    static int words(IpResourceType type) {
+        return type == IpResourceType.IPv6 ? 2 : 1;
+    }
+
+    static long[] universe(IpResourceType type) {
+        return type == IpResourceType.IPv6 ? new long[]{0, 0, -1L, -1L} : new long[]{0, 0xffff_ffffL};
+    }
+
+    /**
+     * @param resources normalized resources in ascending order, resources of other types are skipped
+     */
+    static long[] of(Iterable<? extends IpResource> resources, IpResourceType type) {
+        int words = words(type);
+        Appender result = new Appender(words);
+        long[] range = new long[2 * words];
+        for (IpResource resource : resources) {
+            if (resource.getType() == type) {
+                write(resource.getStart(), range, 0);
+                write(resource.getEnd(), range, words);
+                result.append(range, 0, words);
+            }
+        }
+        return result.build();
+    }
+
+    private static void write(UniqueIpResource bound, long[] target, int offset) {
+        switch (bound.getType()) {
+            case ASN:
+                target[offset] = ((Asn) bound).longValue();
+                break;
+            case IPv4:
+                target[offset] = ((Ipv4Address) bound).longValue();
+                break;
+            case IPv6:
+                target[offset] = ((Ipv6Address) bound).highBits();
+                target[offset + 1] = ((Ipv6Address) bound).lowBits();
+                break;
+        }
+    }
+
+    private static UniqueIpResource read(IpResourceType type, long[] source, int offset) {
+        switch (type) {
+            case ASN:
+                return new Asn(source[offset]);
+            case IPv4:
+                return new Ipv4Address(source[offset]);
+            case IPv6:
+                return Ipv6Address.fromBits(source[offset], source[offset + 1]);
+            default:
+                throw new IllegalStateException("unknown resource type " + type);
+        }
+    }
+
+    /**
+     * @return the range with the given index as normalized resource, as stored in {@link ImmutableResourceSet}
+     */
+    static IpResource resource(IpResourceType type, long[] bounds, int index) {
+        int words = words(type);
+        int offset = 2 * words * index;
+        UniqueIpResource start = read(type, bounds, offset);
+        UniqueIpResource end = read(type, bounds, offset + words);
+        IpResource range = type == IpResourceType.ASN
+            ? IpResourceRange.range(start, end)
+            : IpRange.range((IpAddress) start, (IpAddress) end);
+        return ImmutableResourceSet.normalize(range);
+    }
+
+    static Iterator<IpResource> iterator(IpResourceType type, long[] bounds) {
+        return new Iterator<IpResource>() {
+            private final int count = rangeCount(type, bounds);
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < count;
+            }
+
+            @Override
+            public IpResource next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return resource(type, bounds, index++);
+            }
+        };
+    }
+
+    static ImmutableResourceSet toImmutableResourceSet(IpResourceType type, long[] bounds) {
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder(rangeCount(type, bounds));
+        Iterator<IpResource> iterator = iterator(type, bounds);
+        while (iterator.hasNext()) {
+            builder.append(iterator.next());
+        }
+        return builder.build();
+    }
+
+    static int rangeCount(IpResourceType type, long[] bounds) {
+        return bounds.length / (2 * words(type));
+    }
+
+    /**
+     * Finds the last range starting at or before the value, in ranges with one-word bounds.
+     *
+     * @return the index of the range, or -1
+     */
+    static int floor(long[] bounds, long value) {
+        return floor(bounds, 2, value);
+    }
+
+    /**
+     * Finds the last of the ascending values at every {@code stride}-th index that is not greater than the
+     * given value. The search is branch-free: the search interval is halved the same number of times for every
+     * value.
+     *
+     * @return the index of the value divided by the stride, or -1
+     */
+    static int floor(long[] values, int stride, long value) {
+        int length = values.length / stride;
+        if (length == 0) {
+            return -1;
+        }
+        int base = 0;
+        while (length > 1) {
+            int half = length >>> 1;
+            base += values[stride * (base + half)] <= value ? half : 0;
+            length -= half;
+        }
+        return values[stride * base] <= value ? base : -1;
+    }
+
+    /**
+     * Like {@link #floor(long[], long)}, for a value that is not less than the value that gave the range
+     * {@code from} (or -1). The search gallops forward from that range, so looking up k ascending values in n
+     * ranges takes O(k log n) steps instead of O(k + n).
+     */
+    static int floorFrom(long[] bounds, int from, long value) {
+        int count = bounds.length >>> 1;
+        int below = from;
+        int above = from + 1;
+        for (int step = 1; above < count && bounds[2 * above] <= value; step <<= 1) {
+            below = above;
+            above = below + step;
+        }
+        above = Math.min(above, count);
+        while (above - below > 1) {
+            int middle = (below + above) >>> 1;
+            if (bounds[2 * middle] <= value) {
+                below = middle;
+            } else {
+                above = middle;
+            }
+        }
+        return below;
+    }
+
+    /**
+     * @return whether the value is within a range with one-word bounds
+     */
+    static boolean contains(long[] bounds, long value) {
+        int index = floor(bounds, value);
+        return index >= 0 && value <= bounds[2 * index + 1];
+    }
+
+    /**
+     * @return whether the range from start to end (inclusive) intersects a range with one-word bounds
+     */
+    static boolean intersects(long[] bounds, long start, long end) {
+        int index = floor(bounds, end);
+        return index >= 0 && start <= bounds[2 * index + 1];
+    }
+
+    /**
+     * Like {@link #floor(long[], long)} for IPv6 bounds.
+     */
+    static int floor(long[] bounds, long high, long low) {
+        int length = bounds.length >>> 2;
+        if (length == 0) {
+            return -1;
+        }
+        int base = 0;
+        while (length > 1) {
+            int half = length >>> 1;
+            int middle = 4 * (base + half);
+            base += Ipv6Address.compareBits(bounds[middle], bounds[middle + 1], high, low) <= 0 ? half : 0;
+            length -= half;
+        }
+        return Ipv6Address.compareBits(bounds[4 * base], bounds[4 * base + 1], high, low) <= 0 ? base : -1;
+    }
+
+    /**
+     * Like {@link #floorFrom(long[], int, long)} for IPv6 bounds.
+     */
+    static int floorFrom(long[] bounds, int from, long high, long low) {
+        int count = bounds.length >>> 2;
+        int below = from;
+        int above = from + 1;
+        for (int step = 1; above < count && Ipv6Address.compareBits(bounds[4 * above], bounds[4 * above + 1], high, low) <= 0; step <<= 1) {
+            below = above;
+            above = below + step;
+        }
+        above = Math.min(above, count);
+        while (above - below > 1) {
+            int middle = (below + above) >>> 1;
+            if (Ipv6Address.compareBits(bounds[4 * middle], bounds[4 * middle + 1], high, low) <= 0) {
+                below = middle;
+            } else {
+                above = middle;
+            }
+        }
+        return below;
+    }
+
+    /**
+     * @return whether the address is within a range with IPv6 bounds
+     */
+    static boolean contains(long[] bounds, long high, long low) {
+        int index = floor(bounds, high, low);
+        return index >= 0 && Ipv6Address.compareBits(high, low, bounds[4 * index + 2], bounds[4 * index + 3]) <= 0;
+    }
+
+    private static int compare(long[] left, int i, long[] right, int j, int words) {
+        return words == 1 ? Long.compare(left[i], right[j]) : Ipv6Address.compareBits(left[i], left[i + 1], right[j], right[j + 1]);
+    }
+
+    private static void copy(long[] source, int i, long[] target, int j, int words) {
+        target[j] = source[i];
+        if (words == 2) {
+            target[j + 1] = source[i + 1];
+        }
+    }
+
+    private static void successor(long[] source, int i, long[] target, int j, int words) {
+        if (words == 1) {
+            target[j] = source[i] + 1;
+        } else {
+            long low = source[i + 1] + 1;
+            target[j] = source[i] + (low == 0 ? 1 : 0);
+            target[j + 1] = low;
+        }
+    }
+
+    private static void predecessor(long[] source, int i, long[] target, int j, int words) {
+        if (words == 1) {
+            target[j] = source[i] - 1;
+        } else {
+            long low = source[i + 1];
+            target[j] = source[i] - (low == 0 ? 1 : 0);
+            target[j + 1] = low - 1;
+        }
+    }
+
+    static long[] union(long[] left, long[] right, int words) {
+        int stride = 2 * words;
+        Appender result = new Appender(words);
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (compare(left, i, right, j, words) <= 0) {
+                result.append(left, i, i + words);
+                i += stride;
+            } else {
+                result.append(right, j, j + words);
+                j += stride;
+            }
+        }
+        for (; i < left.length; i += stride) {
+            result.append(left, i, i + words);
+        }
+        for (; j < right.length; j += stride) {
+            result.append(right, j, j + words);
+        }
+        return result.build();
+    }
+
+    static long[] intersection(long[] left, long[] right, int words) {
+        int stride = 2 * words;
+        Appender result = new Appender(words);
+        long[] range = new long[stride];
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (compare(left, i, right, j, words) >= 0) {
+                copy(left, i, range, 0, words);
+            } else {
+                copy(right, j, range, 0, words);
+            }
+            boolean leftEndsFirst = compare(left, i + words, right, j + words, words) <= 0;
+            if (leftEndsFirst) {
+                copy(left, i + words, range, words, words);
+                i += stride;
+            } else {
+                copy(right, j + words, range, words, words);
+                j += stride;
+            }
+            if (compare(range, 0, range, words, words) <= 0) {
+                result.append(range, 0, words);
+            }
+        }
+        return result.build();
+    }
+
+    static long[] difference(long[] left, long[] right, int words) {
+        int stride = 2 * words;
+        Appender result = new Appender(words);
+        long[] range = new long[stride];
+        int j = 0;
+        for (int i = 0; i < left.length; i += stride) {
+            int leftEnd = i + words;
+            copy(left, i, range, 0, words);
+            while (j < right.length && compare(right, j + words, range, 0, words) < 0) {
+                j += stride;
+            }
+            boolean covered = false;
+            for (; j < right.length && compare(right, j, left, leftEnd, words) <= 0; j += stride) {
+                if (compare(right, j, range, 0, words) > 0) {
+                    predecessor(right, j, range, words, words);
+                    result.append(range, 0, words);
+                }
+                if (compare(right, j + words, left, leftEnd, words) >= 0) {
+                    covered = true;
+                    break;
+                }
+                successor(right, j + words, range, 0, words);
+            }
+            if (!covered) {
+                copy(left, leftEnd, range, words, words);
+                result.append(range, 0, words);
+            }
+        }
+        return result.build();
+    }
+
+    static boolean intersects(long[] left, long[] right, int words) {
+        int stride = 2 * words;
+        int i = 0;
+        int j = 0;
+        while (i < left.length && j < right.length) {
+            if (compare(left, i + words, right, j, words) < 0) {
+                i += stride;
+            } else if (compare(right, j + words, left, i, words) < 0) {
+                j += stride;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects ranges appended in ascending order of their start, merging overlapping and adjacent ranges.
+     */
+    private static final class Appender {
+        private final int words;
+        private long[] bounds = new long[16];
+        private int length;
+
+        Appender(int words) {
+            this.words = words;
+        }
+
+        void append(long[] source, int start, int end) {
+            if (length > 0) {
+                int lastEnd = length - words;
+                if (compare(source, start, bounds, lastEnd, words) <= 0 || isSuccessor(bounds, lastEnd, source, start)) {
+                    if (compare(source, end, bounds, lastEnd, words) > 0) {
+                        copy(source, end, bounds, lastEnd, words);
+                    }
+                    return;
+                }
+            }
+            if (length + 2 * words > bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+            }
+            copy(source, start, bounds, length, words);
+            copy(source, end, bounds, length + words, words);
+            length += 2 * words;
+        }
+
+        private boolean isSuccessor(long[] left, int i, long[] right, int j) {
+            return words == 1 ? left[i] + 1 == right[j] : Ipv6Address.isSuccessorBits(left[i], left[i + 1], right[j], right[j + 1]);
+        }
+
+        long[] build() {
+            return length == 0 ? EMPTY : Arrays.copyOf(bounds, length);
+        }
+    }
+}
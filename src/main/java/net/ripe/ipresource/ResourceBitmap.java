@@ -0,0 +1,1052 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, compressed bitmap of IPv4 addresses or ASNs. Values are
+ * partitioned into chunks by their 16 most significant bits, and each chunk
+ * stores its 16 least significant bits in the smallest of three
+ * representations, as in Roaring bitmaps: a sorted array for sparse chunks, a
+ * 65536 bit bitmap for dense chunks, or a list of runs for contiguous ranges.
+ * <p>
+ * This keeps fragmented sets of addresses that would need one range object per
+ * address in an {@link ImmutableResourceSet} within a few bytes per address,
+ * while large contiguous ranges still take only a few bytes per range.
+ * </p>
+ */
+public final class ResourceBitmap implements Iterable<IpResource> {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int BITMAP_WORDS = CHUNK_SIZE / Long.SIZE;
+    private static final int BITMAP_SIZE_IN_BYTES = BITMAP_WORDS * Long.BYTES;
+    private static final int MAXIMUM_ARRAY_CARDINALITY = 4096;
+
+    private final IpResourceType type;
+    private final char[] keys;
+    private final Container[] containers;
+
+    private ResourceBitmap(IpResourceType type, char[] keys, Container[] containers) {
+        this.type = type;
+        this.keys = keys;
+        this.containers = containers;
+    }
+
+    public static ResourceBitmap empty(IpResourceType type) {
+        checkType(type);
+        return new ResourceBitmap(type, new char[0], new Container[0]);
+    }
+
+    /**
+     * @throws IllegalArgumentException the resources contain resources of another type
+     */
+    public static ResourceBitmap of(IpResourceType type, Iterable<? extends IpResource> resources) {
+        checkType(type);
+        long[] ranges = sortedRanges(type, resources);
+        ChunkList chunks = new ChunkList();
+        int key = -1;
+        RunList runs = new RunList();
+        int i = 0;
+        while (i < ranges.length) {
+            long start = ranges[i] >>> 32;
+            long end = ranges[i] & 0xffffffffL;
+            for (++i; i < ranges.length && (ranges[i] >>> 32) <= end + 1; ++i) {
+                end = Math.max(end, ranges[i] & 0xffffffffL);
+            }
+            while (start <= end) {
+                int startKey = (int) (start >>> 16);
+                long chunkEnd = Math.min(end, ((long) startKey << 16) | 0xffff);
+                if (startKey != key) {
+                    chunks.add(key, runs.toContainer());
+                    key = startKey;
+                    runs = new RunList();
+                }
+                runs.add((int) start & 0xffff, (int) chunkEnd & 0xffff);
+                start = chunkEnd + 1;
+            }
+        }
+        chunks.add(key, runs.toContainer());
+        return chunks.toBitmap(type);
+    }
+
+    /*
+     * The ranges of the resources in ascending order, each packed into a long as start (most significant 32 bits)
+     * and end (least significant 32 bits). Ranges may still overlap or be adjacent, unless the resources were an
+     * ImmutableResourceSet.
+     */
+    private static long[] sortedRanges(IpResourceType type, Iterable<? extends IpResource> resources) {
+        long[] result = new long[resources instanceof Collection ? ((Collection<?>) resources).size() : 16];
+        int n = 0;
+        for (IpResource resource : resources) {
+            if (resource.getType() != type) {
+                throw new IllegalArgumentException("resource type " + resource.getType() + " does not match " + type + ": " + resource);
+            }
+            if (n == result.length) {
+                result = Arrays.copyOf(result, Math.max(16, 2 * n));
+            }
+            result[n++] = value(resource.getStart()) << 32 | value(resource.getEnd());
+        }
+        if (n < result.length) {
+            result = Arrays.copyOf(result, n);
+        }
+        if (!(resources instanceof ImmutableResourceSet)) {
+            // Flip the sign bits so the signed sort orders the packed ranges as unsigned values
+            for (int i = 0; i < n; ++i) {
+                result[i] ^= Long.MIN_VALUE;
+            }
+            Arrays.sort(result);
+            for (int i = 0; i < n; ++i) {
+                result[i] ^= Long.MIN_VALUE;
+            }
+        }
+        return result;
+    }
+
+    public IpResourceType getType() {
+        return type;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * @return the number of values in this bitmap
+     */
+    public long cardinality() {
+        long result = 0;
+        for (Container container : containers) {
+            result += container.cardinality();
+        }
+        return result;
+    }
+
+    /**
+     * @return the approximate number of bytes used by the chunks of this bitmap
+     */
+    public long sizeInBytes() {
+        long result = keys.length * (long) Character.BYTES;
+        for (Container container : containers) {
+            result += container.sizeInBytes();
+        }
+        return result;
+    }
+
+    /**
+     * @param value the unsigned 32-bit value of the IPv4 address or ASN
+     */
+    public boolean contains(long value) {
+        if (value < 0 || value > 0xffffffffL) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, (char) (value >>> 16));
+        return index >= 0 && containers[index].contains((int) value & 0xffff);
+    }
+
+    public boolean contains(IpResource resource) {
+        if (resource.getType() != type) {
+            return false;
+        }
+        long start = value(resource.getStart());
+        long end = value(resource.getEnd());
+        int index = Arrays.binarySearch(keys, (char) (start >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        while (start <= end) {
+            int key = (int) (start >>> 16);
+            if (index >= keys.length || keys[index] != key) {
+                return false;
+            }
+            long chunkEnd = Math.min(end, ((long) key << 16) | 0xffff);
+            if (!containers[index].containsRange((int) start & 0xffff, (int) chunkEnd & 0xffff)) {
+                return false;
+            }
+            start = chunkEnd + 1;
+            index++;
+        }
+        return true;
+    }
+
+    public ResourceBitmap union(ResourceBitmap that) {
+        checkSameType(that);
+        ChunkList result = new ChunkList();
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length || j < that.keys.length) {
+            int thisKey = i < this.keys.length ? this.keys[i] : CHUNK_SIZE;
+            int thatKey = j < that.keys.length ? that.keys[j] : CHUNK_SIZE;
+            if (thisKey < thatKey) {
+                result.add(thisKey, this.containers[i++]);
+            } else if (thatKey < thisKey) {
+                result.add(thatKey, that.containers[j++]);
+            } else {
+                result.add(thisKey, union(this.containers[i++], that.containers[j++]));
+            }
+        }
+        return result.toBitmap(type);
+    }
+
+    public ResourceBitmap intersection(ResourceBitmap that) {
+        checkSameType(that);
+        ChunkList result = new ChunkList();
+        int i = 0;
+        int j = 0;
+        while (i < this.keys.length && j < that.keys.length) {
+            if (this.keys[i] < that.keys[j]) {
+                i++;
+            } else if (that.keys[j] < this.keys[i]) {
+                j++;
+            } else {
+                result.add(this.keys[i], intersection(this.containers[i++], that.containers[j++]));
+            }
+        }
+        return result.toBitmap(type);
+    }
+
+    public ResourceBitmap difference(ResourceBitmap that) {
+        checkSameType(that);
+        ChunkList result = new ChunkList();
+        int j = 0;
+        for (int i = 0; i < this.keys.length; ++i) {
+            while (j < that.keys.length && that.keys[j] < this.keys[i]) {
+                j++;
+            }
+            if (j < that.keys.length && that.keys[j] == this.keys[i]) {
+                result.add(this.keys[i], difference(this.containers[i], that.containers[j]));
+            } else {
+                result.add(this.keys[i], this.containers[i]);
+            }
+        }
+        return result.toBitmap(type);
+    }
+
+    public ImmutableResourceSet toImmutableResourceSet() {
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder();
+        for (IpResource resource : this) {
+            builder.append(resource);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the maximal ranges of consecutive values in this bitmap, in ascending order
+     */
+    @Override
+    public Iterator<IpResource> iterator() {
+        return new RangeIterator();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceBitmap)) {
+            return false;
+        }
+        ResourceBitmap that = (ResourceBitmap) obj;
+        return this.type == that.type && Arrays.equals(this.keys, that.keys) && Arrays.equals(this.containers, that.containers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * type.hashCode() + Arrays.hashCode(keys)) + Arrays.hashCode(containers);
+    }
+
+    @Override
+    public String toString() {
+        return toImmutableResourceSet().toString();
+    }
+
+    private static void checkType(IpResourceType type) {
+        if (type != IpResourceType.ASN && type != IpResourceType.IPv4) {
+            throw new IllegalArgumentException("only ASN and IPv4 resources are supported: " + type);
+        }
+    }
+
+    private void checkSameType(ResourceBitmap that) {
+        if (this.type != that.type) {
+            throw new IllegalArgumentException("resource types do not match: " + this.type + ", " + that.type);
+        }
+    }
+
+    private static long value(UniqueIpResource resource) {
+        return resource instanceof Asn ? ((Asn) resource).longValue() : ((Ipv4Address) resource).longValue();
+    }
+
+    private UniqueIpResource resource(long value) {
+        return type == IpResourceType.ASN ? new Asn(value) : new Ipv4Address(value);
+    }
+
+    private static Container union(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            char[] x = ((ArrayContainer) a).values;
+            char[] y = ((ArrayContainer) b).values;
+            char[] result = new char[x.length + y.length];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) {
+                    result[n++] = x[i++];
+                } else if (y[j] < x[i]) {
+                    result[n++] = y[j++];
+                } else {
+                    result[n++] = x[i++];
+                    j++;
+                }
+            }
+            while (i < x.length) {
+                result[n++] = x[i++];
+            }
+            while (j < y.length) {
+                result[n++] = y[j++];
+            }
+            return Container.fromArray(result, n);
+        } else if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a;
+            RunContainer y = (RunContainer) b;
+            RunList result = new RunList();
+            int i = 0;
+            int j = 0;
+            while (i < x.starts.length || j < y.starts.length) {
+                if (j >= y.starts.length || (i < x.starts.length && x.starts[i] <= y.starts[j])) {
+                    result.addMerging(x.starts[i], x.ends[i]);
+                    i++;
+                } else {
+                    result.addMerging(y.starts[j], y.ends[j]);
+                    j++;
+                }
+            }
+            return result.toContainer();
+        } else {
+            long[] words = a.toBitmap();
+            b.orInto(words);
+            return Container.fromBitmap(words);
+        }
+    }
+
+    private static Container intersection(Container a, Container b) {
+        if (b instanceof ArrayContainer && !(a instanceof ArrayContainer)) {
+            return intersection(b, a);
+        }
+        if (a instanceof ArrayContainer) {
+            char[] values = ((ArrayContainer) a).values;
+            char[] result = new char[values.length];
+            int n = 0;
+            for (char value : values) {
+                if (b.contains(value)) {
+                    result[n++] = value;
+                }
+            }
+            return Container.fromArray(result, n);
+        } else if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a;
+            RunContainer y = (RunContainer) b;
+            RunList result = new RunList();
+            int i = 0;
+            int j = 0;
+            while (i < x.starts.length && j < y.starts.length) {
+                int start = Math.max(x.starts[i], y.starts[j]);
+                int end = Math.min(x.ends[i], y.ends[j]);
+                if (start <= end) {
+                    result.add(start, end);
+                }
+                if (x.ends[i] < y.ends[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return result.toContainer();
+        } else {
+            long[] words = a.toBitmap();
+            long[] other = b.toBitmap();
+            for (int i = 0; i < words.length; ++i) {
+                words[i] &= other[i];
+            }
+            return Container.fromBitmap(words);
+        }
+    }
+
+    private static Container difference(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            char[] values = ((ArrayContainer) a).values;
+            char[] result = new char[values.length];
+            int n = 0;
+            for (char value : values) {
+                if (!b.contains(value)) {
+                    result[n++] = value;
+                }
+            }
+            return Container.fromArray(result, n);
+        } else if (a instanceof RunContainer && b instanceof RunContainer) {
+            RunContainer x = (RunContainer) a;
+            RunContainer y = (RunContainer) b;
+            RunList result = new RunList();
+            int j = 0;
+            for (int i = 0; i < x.starts.length; ++i) {
+                int start = x.starts[i];
+                int end = x.ends[i];
+                while (j < y.starts.length && y.ends[j] < start) {
+                    j++;
+                }
+                int k = j;
+                while (start <= end && k < y.starts.length && y.starts[k] <= end) {
+                    if (y.starts[k] > start) {
+                        result.add(start, y.starts[k] - 1);
+                    }
+                    start = Math.max(start, y.ends[k] + 1);
+                    k++;
+                }
+                if (start <= end) {
+                    result.add(start, end);
+                }
+            }
+            return result.toContainer();
+        } else {
+            long[] words = a.toBitmap();
+            long[] other = b.toBitmap();
+            for (int i = 0; i < words.length; ++i) {
+                words[i] &= ~other[i];
+            }
+            return Container.fromBitmap(words);
+        }
+    }
+
+    private static void setRange(long[] words, int from, int to) {
+        int firstWord = from >>> 6;
+        int lastWord = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (firstWord == lastWord) {
+            words[firstWord] |= firstMask & lastMask;
+        } else {
+            words[firstWord] |= firstMask;
+            for (int i = firstWord + 1; i < lastWord; ++i) {
+                words[i] = -1L;
+            }
+            words[lastWord] |= lastMask;
+        }
+    }
+
+    /**
+     * Builds a bitmap from individual values and ranges supplied in any order.
+     */
+    public static class Builder {
+        private static final int SMALL_RANGE_SIZE = 64;
+
+        private final IpResourceType type;
+        private boolean built;
+        private char[][] values = new char[0][];
+        private int[] sizes = new int[0];
+        private long[][] bitmaps = new long[0][];
+
+        public Builder(IpResourceType type) {
+            checkType(type);
+            this.type = type;
+        }
+
+        /**
+         * @param value the unsigned 32-bit value of the IPv4 address or ASN
+         */
+        public Builder add(long value) {
+            assertNotAlreadyUsed();
+            if (value < 0 || value > 0xffffffffL) {
+                throw new IllegalArgumentException("value out of range: " + value);
+            }
+            int key = (int) (value >>> 16);
+            ensureChunk(key);
+            add(key, (char) value);
+            return this;
+        }
+
+        public Builder add(IpResource resource) {
+            assertNotAlreadyUsed();
+            if (resource.getType() != type) {
+                throw new IllegalArgumentException("resource type " + resource.getType() + " does not match " + type + ": " + resource);
+            }
+            long start = value(resource.getStart());
+            long end = value(resource.getEnd());
+            while (start <= end) {
+                int key = (int) (start >>> 16);
+                long chunkEnd = Math.min(end, ((long) key << 16) | 0xffff);
+                ensureChunk(key);
+                if (chunkEnd - start < SMALL_RANGE_SIZE && bitmaps[key] == null) {
+                    for (long value = start; value <= chunkEnd; ++value) {
+                        add(key, (char) value);
+                    }
+                } else {
+                    setRange(bitmap(key), (int) start & 0xffff, (int) chunkEnd & 0xffff);
+                }
+                start = chunkEnd + 1;
+            }
+            return this;
+        }
+
+        public Builder addAll(Iterable<? extends IpResource> resources) {
+            for (IpResource resource : resources) {
+                add(resource);
+            }
+            return this;
+        }
+
+        public ResourceBitmap build() {
+            assertNotAlreadyUsed();
+            ChunkList result = new ChunkList();
+            for (int key = 0; key < values.length; ++key) {
+                if (bitmaps[key] != null) {
+                    result.add(key, Container.fromBitmap(bitmaps[key]));
+                } else if (values[key] != null) {
+                    result.add(key, Container.fromArray(values[key], sortAndRemoveDuplicates(key)));
+                }
+            }
+            built = true;
+            values = null;
+            sizes = null;
+            bitmaps = null;
+            return result.toBitmap(type);
+        }
+
+        /*
+         * The chunk tables grow up to the highest key used, so small ASNs or a few IPv4 prefixes do not
+         * allocate tables for all 65536 chunks.
+         */
+        private void ensureChunk(int key) {
+            if (key >= values.length) {
+                int length = Math.min(CHUNK_SIZE, Math.max(key + 1, 2 * values.length));
+                values = Arrays.copyOf(values, length);
+                sizes = Arrays.copyOf(sizes, length);
+                bitmaps = Arrays.copyOf(bitmaps, length);
+            }
+        }
+
+        private void add(int key, char value) {
+            if (bitmaps[key] != null) {
+                bitmaps[key][value >>> 6] |= 1L << value;
+                return;
+            }
+            char[] chunk = values[key];
+            if (chunk == null) {
+                chunk = values[key] = new char[16];
+            } else if (sizes[key] == chunk.length) {
+                if (chunk.length < MAXIMUM_ARRAY_CARDINALITY) {
+                    chunk = values[key] = Arrays.copyOf(chunk, chunk.length * 2);
+                } else if (sortAndRemoveDuplicates(key) > MAXIMUM_ARRAY_CARDINALITY / 2) {
+                    bitmap(key)[value >>> 6] |= 1L << value;
+                    return;
+                }
+            }
+            chunk[sizes[key]++] = value;
+        }
+
+        private long[] bitmap(int key) {
+            if (bitmaps[key] == null) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int i = 0; i < sizes[key]; ++i) {
+                    char value = values[key][i];
+                    words[value >>> 6] |= 1L << value;
+                }
+                bitmaps[key] = words;
+                values[key] = null;
+                sizes[key] = 0;
+            }
+            return bitmaps[key];
+        }
+
+        private int sortAndRemoveDuplicates(int key) {
+            char[] chunk = values[key];
+            Arrays.sort(chunk, 0, sizes[key]);
+            int n = 0;
+            for (int i = 0; i < sizes[key]; ++i) {
+                if (n == 0 || chunk[i] != chunk[n - 1]) {
+                    chunk[n++] = chunk[i];
+                }
+            }
+            sizes[key] = n;
+            return n;
+        }
+
+        private void assertNotAlreadyUsed() {
+            if (built) {
+                throw new IllegalStateException("builder can only be used once");
+            }
+        }
+    }
+
+    /*
+     * The 16 least significant bits of the values in a chunk. Containers are always created in their
+     * smallest representation (see Container.kind), so equal chunks have equal containers.
+     */
+    private abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract int sizeInBytes();
+
+        abstract boolean contains(int value);
+
+        abstract boolean containsRange(int from, int to);
+
+        abstract void orInto(long[] words);
+
+        /**
+         * Appends the runs of consecutive values as (start, end) pairs.
+         */
+        abstract void appendRuns(RunList runs);
+
+        long[] toBitmap() {
+            long[] words = new long[BITMAP_WORDS];
+            orInto(words);
+            return words;
+        }
+
+        static Container fromArray(char[] values, int n) {
+            if (n == 0) {
+                return null;
+            }
+            int runs = 1;
+            for (int i = 1; i < n; ++i) {
+                if (values[i] != values[i - 1] + 1) {
+                    runs++;
+                }
+            }
+            switch (kind(n, runs)) {
+                case ARRAY:
+                    return new ArrayContainer(Arrays.copyOf(values, n));
+                case RUN:
+                    RunList result = new RunList();
+                    for (int i = 0; i < n; ++i) {
+                        result.addMerging(values[i], values[i]);
+                    }
+                    return new RunContainer(result);
+                default:
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int i = 0; i < n; ++i) {
+                        words[values[i] >>> 6] |= 1L << values[i];
+                    }
+                    return new BitmapContainer(words, n);
+            }
+        }
+
+        static Container fromRuns(RunList runs) {
+            if (runs.size == 0) {
+                return null;
+            }
+            int cardinality = 0;
+            for (int i = 0; i < runs.size; ++i) {
+                cardinality += runs.ends[i] - runs.starts[i] + 1;
+            }
+            switch (kind(cardinality, runs.size)) {
+                case RUN:
+                    return new RunContainer(runs);
+                case ARRAY:
+                    char[] values = new char[cardinality];
+                    int n = 0;
+                    for (int i = 0; i < runs.size; ++i) {
+                        for (int value = runs.starts[i]; value <= runs.ends[i]; ++value) {
+                            values[n++] = (char) value;
+                        }
+                    }
+                    return new ArrayContainer(values);
+                default:
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int i = 0; i < runs.size; ++i) {
+                        setRange(words, runs.starts[i], runs.ends[i]);
+                    }
+                    return new BitmapContainer(words, cardinality);
+            }
+        }
+
+        static Container fromBitmap(long[] words) {
+            int cardinality = 0;
+            int runs = 0;
+            long previous = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+                runs += Long.bitCount(word & ~((word << 1) | (previous >>> 63)));
+                previous = word;
+            }
+            if (cardinality == 0) {
+                return null;
+            }
+            if (kind(cardinality, runs) == Kind.BITMAP) {
+                return new BitmapContainer(words, cardinality);
+            }
+            RunList result = new RunList();
+            new BitmapContainer(words, cardinality).appendRuns(result);
+            return fromRuns(result);
+        }
+
+        private static Kind kind(int cardinality, int runs) {
+            int arraySize = cardinality <= MAXIMUM_ARRAY_CARDINALITY ? cardinality * Character.BYTES : Integer.MAX_VALUE;
+            int runSize = runs * 2 * Character.BYTES;
+            if (runSize <= arraySize && runSize <= BITMAP_SIZE_IN_BYTES) {
+                return Kind.RUN;
+            } else if (arraySize <= BITMAP_SIZE_IN_BYTES) {
+                return Kind.ARRAY;
+            } else {
+                return Kind.BITMAP;
+            }
+        }
+
+        private enum Kind {
+            ARRAY, BITMAP, RUN
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return values.length * Character.BYTES;
+        }
+
+        @Override
+        boolean contains(int value) {
+            return Arrays.binarySearch(values, (char) value) >= 0;
+        }
+
+        @Override
+        boolean containsRange(int from, int to) {
+            int index = Arrays.binarySearch(values, (char) from);
+            return index >= 0 && index + (to - from) < values.length && values[index + (to - from)] == to;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+        }
+
+        @Override
+        void appendRuns(RunList runs) {
+            for (char value : values) {
+                runs.addMerging(value, value);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ArrayContainer && Arrays.equals(values, ((ArrayContainer) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return BITMAP_SIZE_IN_BYTES;
+        }
+
+        @Override
+        boolean contains(int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        boolean containsRange(int from, int to) {
+            int firstWord = from >>> 6;
+            int lastWord = to >>> 6;
+            for (int i = firstWord; i <= lastWord; ++i) {
+                long mask = -1L;
+                if (i == firstWord) {
+                    mask &= -1L << from;
+                }
+                if (i == lastWord) {
+                    mask &= -1L >>> (63 - (to & 63));
+                }
+                if ((words[i] & mask) != mask) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < words.length; ++i) {
+                words[i] |= this.words[i];
+            }
+        }
+
+        @Override
+        void appendRuns(RunList runs) {
+            int start = -1;
+            for (int i = 0; i < words.length; ++i) {
+                long word = words[i];
+                int bit = 0;
+                while (bit < Long.SIZE) {
+                    if (start < 0) {
+                        int skip = Long.numberOfTrailingZeros(word >>> bit);
+                        if (skip >= Long.SIZE - bit) {
+                            break;
+                        }
+                        bit += skip;
+                        start = i * Long.SIZE + bit;
+                    } else {
+                        int length = Long.numberOfTrailingZeros(~word >>> bit);
+                        if (length >= Long.SIZE - bit) {
+                            break;
+                        }
+                        bit += length;
+                        runs.add(start, i * Long.SIZE + bit - 1);
+                        start = -1;
+                    }
+                }
+            }
+            if (start >= 0) {
+                runs.add(start, CHUNK_SIZE - 1);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof BitmapContainer && Arrays.equals(words, ((BitmapContainer) obj).words);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+    }
+
+    private static final class RunContainer extends Container {
+        private final char[] starts;
+        private final char[] ends;
+
+        RunContainer(RunList runs) {
+            this.starts = Arrays.copyOf(runs.starts, runs.size);
+            this.ends = Arrays.copyOf(runs.ends, runs.size);
+        }
+
+        @Override
+        int cardinality() {
+            int result = 0;
+            for (int i = 0; i < starts.length; ++i) {
+                result += ends[i] - starts[i] + 1;
+            }
+            return result;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return starts.length * 2 * Character.BYTES;
+        }
+
+        @Override
+        boolean contains(int value) {
+            int index = runContaining(value);
+            return index >= 0 && ends[index] >= value;
+        }
+
+        @Override
+        boolean containsRange(int from, int to) {
+            int index = runContaining(from);
+            return index >= 0 && ends[index] >= to;
+        }
+
+        private int runContaining(int value) {
+            int index = Arrays.binarySearch(starts, (char) value);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < starts.length; ++i) {
+                setRange(words, starts[i], ends[i]);
+            }
+        }
+
+        @Override
+        void appendRuns(RunList runs) {
+            for (int i = 0; i < starts.length; ++i) {
+                runs.add(starts[i], ends[i]);
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RunContainer && Arrays.equals(starts, ((RunContainer) obj).starts) && Arrays.equals(ends, ((RunContainer) obj).ends);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(starts) + Arrays.hashCode(ends);
+        }
+    }
+
+    /*
+     * Growable list of ascending, non-overlapping runs within a chunk.
+     */
+    private static final class RunList {
+        private char[] starts = new char[4];
+        private char[] ends = new char[4];
+        private int size;
+
+        void add(int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = (char) start;
+            ends[size] = (char) end;
+            size++;
+        }
+
+        /**
+         * Adds a run that starts at or after the start of the last run, merging it with the last run
+         * when they overlap or are adjacent.
+         */
+        void addMerging(int start, int end) {
+            if (size > 0 && start <= ends[size - 1] + 1) {
+                ends[size - 1] = (char) Math.max(ends[size - 1], end);
+            } else {
+                add(start, end);
+            }
+        }
+
+        Container toContainer() {
+            return Container.fromRuns(this);
+        }
+    }
+
+    private static final class ChunkList {
+        private char[] keys = new char[16];
+        private Container[] containers = new Container[16];
+        private int size;
+
+        void add(int key, Container container) {
+            if (container == null) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = (char) key;
+            containers[size] = container;
+            size++;
+        }
+
+        ResourceBitmap toBitmap(IpResourceType type) {
+            return new ResourceBitmap(type, Arrays.copyOf(keys, size), Arrays.copyOf(containers, size));
+        }
+    }
+
+    private final class RangeIterator implements Iterator<IpResource> {
+        private final RunList runs = new RunList();
+        private int chunk;
+        private int run;
+        private IpResource next;
+
+        RangeIterator() {
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public IpResource next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            IpResource result = next;
+            next = advance();
+            return result;
+        }
+
+        private IpResource advance() {
+            long start = -1;
+            long end = -1;
+            while (true) {
+                if (run == runs.size) {
+                    if (chunk == keys.length) {
+                        break;
+                    }
+                    runs.size = 0;
+                    run = 0;
+                    containers[chunk].appendRuns(runs);
+                    chunk++;
+                }
+                long key = (long) keys[chunk - 1] << 16;
+                long runStart = key | runs.starts[run];
+                long runEnd = key | runs.ends[run];
+                if (start < 0) {
+                    start = runStart;
+                } else if (runStart != end + 1) {
+                    break;
+                }
+                end = runEnd;
+                run++;
+            }
+            if (start < 0) {
+                return null;
+            }
+            return start == end ? resource(start) : resource(start).upTo(resource(end));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+
+/**
+ * Neighbour queries on resource maps keyed by end-point. Results are the stored resources, restricted to
+ * the type of the queried resource.
+ */
+final class ResourceNavigation {
+
+    private ResourceNavigation() {
+    }
+
+    static IpResource findContaining(NavigableMap<UniqueIpResource, IpResource> resourcesByEndPoint, IpResource resource) {
+        Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.ceilingEntry(resource.getStart());
+        return potentialMatch != null && potentialMatch.getValue().contains(resource) ? potentialMatch.getValue() : null;
+    }
+
+    static IpResource floor(NavigableMap<UniqueIpResource, IpResource> resourcesByEndPoint, IpResource resource) {
+        UniqueIpResource start = resource.getStart();
+        Entry<UniqueIpResource, IpResource> candidate = resourcesByEndPoint.ceilingEntry(start);
+        if (candidate == null || candidate.getValue().getStart().compareTo(start) > 0) {
+            candidate = resourcesByEndPoint.lowerEntry(start);
+        }
+        return sameType(candidate, resource);
+    }
+
+    static IpResource lower(NavigableMap<UniqueIpResource, IpResource> resourcesByEndPoint, IpResource resource) {
+        return sameType(resourcesByEndPoint.lowerEntry(resource.getStart()), resource);
+    }
+
+    static IpResource ceiling(NavigableMap<UniqueIpResource, IpResource> resourcesByEndPoint, IpResource resource) {
+        return sameType(resourcesByEndPoint.ceilingEntry(resource.getEnd()), resource);
+    }
+
+    static IpResource higher(NavigableMap<UniqueIpResource, IpResource> resourcesByEndPoint, IpResource resource) {
+        UniqueIpResource end = resource.getEnd();
+        Entry<UniqueIpResource, IpResource> candidate = resourcesByEndPoint.higherEntry(end);
+        if (candidate != null && candidate.getValue().getStart().compareTo(end) <= 0) {
+            candidate = resourcesByEndPoint.higherEntry(candidate.getKey());
+        }
+        return sameType(candidate, resource);
+    }
+
+    private static IpResource sameType(Entry<UniqueIpResource, IpResource> entry, IpResource resource) {
+        return entry != null && entry.getValue().getType() == resource.getType() ? entry.getValue() : null;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compact summary of a collection of resources that quickly rules out lookups of resources that cannot
+ * intersect it. ASNs and IPv4 addresses are summarized by a presence bitmap of their /16 blocks. IPv6 addresses
+ * are summarized by a presence bitmap of their /16 blocks, refined by a Bloom filter over /32 blocks for
+ * resources that do not cover too many /32 blocks.
+ * <p>
+ * A prefilter can give false positives, but never false negatives. It keeps count of the lookups and of the
+ * lookups it rejected, to judge whether it pays off.
+ * </p>
+ * <p>
+ * Adding resources is not thread safe, lookups are.
+ * </p>
+ */
+public final class ResourcePrefilter {
+
+    private static final int BLOCK_BITS = 16;
+    private static final int BLOCK_COUNT = 1 << BLOCK_BITS;
+
+    /*
+     * IPv6 resources covering more /32 blocks than this mark their /16 blocks as dense instead of being added
+     * to the Bloom filter.
+     */
+    private static final int MAXIMUM_BLOOM_BLOCKS = 256;
+    private static final int BLOOM_BITS_PER_BLOCK = 16;
+    private static final int BLOOM_HASH_COUNT = 4;
+    private static final int MINIMUM_BLOOM_SIZE = 1 << 12;
+    private static final int MAXIMUM_BLOOM_SIZE = 1 << 26;
+
+    private final long[] asnBlocks = new long[BLOCK_COUNT / Long.SIZE];
+    private final long[] ipv4Blocks = new long[BLOCK_COUNT / Long.SIZE];
+    private final long[] ipv6Blocks = new long[BLOCK_COUNT / Long.SIZE];
+    private final long[] ipv6DenseBlocks = new long[BLOCK_COUNT / Long.SIZE];
+    private final long[] ipv6Bloom;
+
+    private final LongAdder queryCount = new LongAdder();
+    private final LongAdder rejectionCount = new LongAdder();
+
+    private ResourcePrefilter(int expectedIpv6Blocks) {
+        long size = Long.highestOneBit(Math.max(1, (long) expectedIpv6Blocks * BLOOM_BITS_PER_BLOCK - 1)) << 1;
+        this.ipv6Bloom = new long[(int) (Math.min(MAXIMUM_BLOOM_SIZE, Math.max(MINIMUM_BLOOM_SIZE, size)) / Long.SIZE)];
+    }
+
+    public static ResourcePrefilter empty() {
+        return new ResourcePrefilter(0);
+    }
+
+    public static ResourcePrefilter of(Iterable<? extends IpResource> resources) {
+        long expectedIpv6Blocks = 0;
+        for (IpResource resource : resources) {
+            if (resource.getType() == IpResourceType.IPv6) {
+                long blocks = ipv6Block(resource.getEnd()) - ipv6Block(resource.getStart()) + 1;
+                expectedIpv6Blocks += blocks <= MAXIMUM_BLOOM_BLOCKS ? blocks : 0;
+            }
+        }
+
+        ResourcePrefilter result = new ResourcePrefilter((int) Math.min(Integer.MAX_VALUE, expectedIpv6Blocks));
+        for (IpResource resource : resources) {
+            result.add(resource);
+        }
+        return result;
+    }
+
+    public void add(IpResource resource) {
+        switch (resource.getType()) {
+            case ASN:
+                setRange(asnBlocks, (int) (((Asn) resource.getStart()).longValue() >>> BLOCK_BITS), (int) (((Asn) resource.getEnd()).longValue() >>> BLOCK_BITS));
+                break;
+            case IPv4:
+                setRange(ipv4Blocks, (int) (((Ipv4Address) resource.getStart()).longValue() >>> BLOCK_BITS), (int) (((Ipv4Address) resource.getEnd()).longValue() >>> BLOCK_BITS));
+                break;
+            case IPv6:
+                long start = ipv6Block(resource.getStart());
+                long end = ipv6Block(resource.getEnd());
+                setRange(ipv6Blocks, (int) (start >>> BLOCK_BITS), (int) (end >>> BLOCK_BITS));
+                if (end - start < MAXIMUM_BLOOM_BLOCKS) {
+                    for (long block = start; block <= end; ++block) {
+                        addToBloom(block);
+                    }
+                } else {
+                    setRange(ipv6DenseBlocks, (int) (start >>> BLOCK_BITS), (int) (end >>> BLOCK_BITS));
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return false if the resource certainly does not intersect any added resource, true if it may
+     */
+    public boolean mightIntersect(IpResource resource) {
+        queryCount.increment();
+        boolean result = test(resource);
+        if (!result) {
+            rejectionCount.increment();
+        }
+        return result;
+    }
+
+    private boolean test(IpResource resource) {
+        switch (resource.getType()) {
+            case ASN:
+                return anySet(asnBlocks, (int) (((Asn) resource.getStart()).longValue() >>> BLOCK_BITS), (int) (((Asn) resource.getEnd()).longValue() >>> BLOCK_BITS));
+            case IPv4:
+                return anySet(ipv4Blocks, (int) (((Ipv4Address) resource.getStart()).longValue() >>> BLOCK_BITS), (int) (((Ipv4Address) resource.getEnd()).longValue() >>> BLOCK_BITS));
+            case IPv6:
+                long start = ipv6Block(resource.getStart());
+                long end = ipv6Block(resource.getEnd());
+                int block16 = (int) (start >>> BLOCK_BITS);
+                if (!anySet(ipv6Blocks, block16, (int) (end >>> BLOCK_BITS))) {
+                    return false;
+                }
+                return start != end || isSet(ipv6DenseBlocks, block16) || bloomContains(start);
+            default:
+                throw new IllegalArgumentException("unknown resource type: " + resource.getType());
+        }
+    }
+
+    /**
+     * @return the number of lookups so far
+     */
+    public long getQueryCount() {
+        return queryCount.sum();
+    }
+
+    /**
+     * @return the number of lookups rejected by this prefilter so far
+     */
+    public long getRejectionCount() {
+        return rejectionCount.sum();
+    }
+
+    /**
+     * @return the fraction of lookups rejected by this prefilter, or zero if there were no lookups
+     */
+    public double getRejectionRate() {
+        long queries = getQueryCount();
+        return queries == 0 ? 0 : (double) getRejectionCount() / queries;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourcePrefilter[queries=" + getQueryCount() + ", rejections=" + getRejectionCount() + "]";
+    }
+
+    /*
+     * The /32 block of an IPv6 address, as an unsigned 32-bit value.
+     */
+    private static long ipv6Block(UniqueIpResource address) {
+        return ((Ipv6Address) address).highBits() >>> Integer.SIZE;
+    }
+
+    private void addToBloom(long block) {
+        long hash = mix(block);
+        int mask = ipv6Bloom.length * Long.SIZE - 1;
+        for (int i = 0; i < BLOOM_HASH_COUNT; ++i) {
+            int bit = (int) (hash + i * (hash >>> Integer.SIZE)) & mask;
+            ipv6Bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean bloomContains(long block) {
+        long hash = mix(block);
+        int mask = ipv6Bloom.length * Long.SIZE - 1;
+        for (int i = 0; i < BLOOM_HASH_COUNT; ++i) {
+            int bit = (int) (hash + i * (hash >>> Integer.SIZE)) & mask;
+            if ((ipv6Bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Finalizer of the SplitMix64 generator, to spread the bits of consecutive blocks.
+     */
+    private static long mix(long value) {
+        long z = value * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void setRange(long[] bits, int from, int to) {
+        int fromWord = from >>> 6;
+        int toWord = to >>> 6;
+        long fromMask = -1L << from;
+        long toMask = -1L >>> (Long.SIZE - 1 - (to & 63));
+        if (fromWord == toWord) {
+            bits[fromWord] |= fromMask & toMask;
+        } else {
+            bits[fromWord] |= fromMask;
+            for (int word = fromWord + 1; word < toWord; ++word) {
+                bits[word] = -1L;
+            }
+            bits[toWord] |= toMask;
+        }
+    }
+
+    private static boolean anySet(long[] bits, int from, int to) {
+        int fromWord = from >>> 6;
+        int toWord = to >>> 6;
+        long fromMask = -1L << from;
+        long toMask = -1L >>> (Long.SIZE - 1 - (to & 63));
+        if (fromWord == toWord) {
+            return (bits[fromWord] & fromMask & toMask) != 0;
+        }
+        if ((bits[fromWord] & fromMask) != 0) {
+            return true;
+        }
+        for (int word = fromWord + 1; word < toWord; ++word) {
+            if (bits[word] != 0) {
+                return true;
+            }
+        }
+        return (bits[toWord] & toMask) != 0;
+    }
+}
@@ -0,0 +1,240 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Cumulative count index over a resource set for rank and select queries, and uniform sampling. Elements
+ * (ASNs and addresses) are ordered as in the resource set: ASNs, then IPv4 addresses, then IPv6 addresses.
+ * Counts are kept in longs for ASNs and IPv4, and in {@code BigInteger}s for IPv6. Every query takes
+ * logarithmic time in the number of resources.
+ */
+public final class ResourceRankIndex {
+
+    private final LongSegment asns;
+    private final LongSegment ipv4;
+    private final Ipv6Segment ipv6;
+    private final BigInteger size;
+
+    ResourceRankIndex(Iterable<IpResource> resources) {
+        List<IpResource> asnResources = new ArrayList<>();
+        List<IpResource> ipv4Resources = new ArrayList<>();
+        List<IpResource> ipv6Resources = new ArrayList<>();
+        for (IpResource resource : resources) {
+            switch (resource.getType()) {
+                case ASN:
+                    asnResources.add(resource);
+                    break;
+                case IPv4:
+                    ipv4Resources.add(resource);
+                    break;
+                case IPv6:
+                    ipv6Resources.add(resource);
+                    break;
+            }
+        }
+        this.asns = new LongSegment(IpResourceType.ASN, asnResources, 0);
+        this.ipv4 = new LongSegment(IpResourceType.IPv4, ipv4Resources, asns.total);
+        this.ipv6 = new Ipv6Segment(ipv6Resources, BigInteger.valueOf(ipv4.offset + ipv4.total));
+        this.size = ipv6.offset.add(ipv6.total);
+    }
+
+    /**
+     * @return the number of ASNs and addresses in the resource set
+     */
+    public BigInteger size() {
+        return size;
+    }
+
+    /**
+     * @return the number of elements in the resource set that come before the given ASN or address
+     */
+    public BigInteger rank(UniqueIpResource element) {
+        Validate.notNull(element, "element is null");
+        switch (element.getType()) {
+            case ASN:
+                return BigInteger.valueOf(asns.rank(((Asn) element).longValue()));
+            case IPv4:
+                return BigInteger.valueOf(ipv4.rank(((Ipv4Address) element).longValue()));
+            default:
+                return ipv6.rank(element.getValue());
+        }
+    }
+
+    /**
+     * @return the element of the resource set with the given zero-based index
+     * @throws IllegalArgumentException the index is negative or not smaller than the size
+     */
+    public UniqueIpResource select(BigInteger index) {
+        Validate.isTrue(index.signum() >= 0 && index.compareTo(size) < 0, "index out of range: %s", index);
+        if (index.compareTo(ipv6.offset) >= 0) {
+            return ipv6.select(index.subtract(ipv6.offset));
+        }
+        return select(index.longValue());
+    }
+
+    /**
+     * @see #select(BigInteger)
+     */
+    public UniqueIpResource select(long index) {
+        Validate.isTrue(index >= 0 && BigInteger.valueOf(index).compareTo(size) < 0, "index out of range: %s", index);
+        if (index < ipv4.offset) {
+            return asns.select(index);
+        } else if (index < ipv4.offset + ipv4.total) {
+            return ipv4.select(index - ipv4.offset);
+        } else {
+            return ipv6.select(BigInteger.valueOf(index).subtract(ipv6.offset));
+        }
+    }
+
+    /**
+     * @return a stream of {@code count} elements drawn uniformly and independently from the resource set
+     * @throws IllegalArgumentException the count is negative, or positive while the resource set is empty
+     */
+    public Stream<UniqueIpResource> sample(Random random, int count) {
+        Validate.notNull(random, "random is null");
+        Validate.isTrue(count >= 0, "count must not be negative");
+        Validate.isTrue(count == 0 || size.signum() > 0, "cannot sample from an empty resource set");
+        return Stream.generate(() -> select(randomIndex(random))).limit(count);
+    }
+
+    private BigInteger randomIndex(Random random) {
+        if (size.bitLength() < Long.SIZE) {
+            long bound = size.longValue();
+            long mask = bound == 1 ? 0 : -1L >>> Long.numberOfLeadingZeros(bound - 1);
+            long result;
+            do {
+                result = random.nextLong() & mask;
+            } while (result >= bound);
+            return BigInteger.valueOf(result);
+        }
+        BigInteger result;
+        do {
+            result = new BigInteger(size.bitLength(), random);
+        } while (result.compareTo(size) >= 0);
+        return result;
+    }
+
+    private static final class LongSegment {
+        private final IpResourceType type;
+        private final long[] starts;
+        private final long[] ends;
+        private final long[] before;
+        private final long offset;
+        private final long total;
+
+        LongSegment(IpResourceType type, List<IpResource> resources, long offset) {
+            this.type = type;
+            this.starts = new long[resources.size()];
+            this.ends = new long[resources.size()];
+            this.before = new long[resources.size()];
+            this.offset = offset;
+            long count = 0;
+            for (int i = 0; i < resources.size(); ++i) {
+                starts[i] = resources.get(i).getStart().getValue().longValue();
+                ends[i] = resources.get(i).getEnd().getValue().longValue();
+                before[i] = count;
+                count += ends[i] - starts[i] + 1;
+            }
+            this.total = count;
+        }
+
+        long rank(long value) {
+            int i = PrimitiveRanges.floor(starts, 1, value);
+            if (i < 0) {
+                return offset;
+            }
+            return offset + before[i] + Math.min(value, ends[i] + 1) - starts[i];
+        }
+
+        UniqueIpResource select(long index) {
+            int i = PrimitiveRanges.floor(before, 1, index);
+            return type.fromBigInteger(BigInteger.valueOf(starts[i] + index - before[i]));
+        }
+    }
+
+    private static final class Ipv6Segment {
+        private final BigInteger[] starts;
+        private final BigInteger[] ends;
+        private final BigInteger[] before;
+        private final BigInteger offset;
+        private final BigInteger total;
+
+        Ipv6Segment(List<IpResource> resources, BigInteger offset) {
+            this.starts = new BigInteger[resources.size()];
+            this.ends = new BigInteger[resources.size()];
+            this.before = new BigInteger[resources.size()];
+            this.offset = offset;
+            BigInteger count = BigInteger.ZERO;
+            for (int i = 0; i < resources.size(); ++i) {
+                starts[i] = resources.get(i).getStart().getValue();
+                ends[i] = resources.get(i).getEnd().getValue();
+                before[i] = count;
+                count = count.add(ends[i].subtract(starts[i])).add(BigInteger.ONE);
+            }
+            this.total = count;
+        }
+
+        BigInteger rank(BigInteger value) {
+            int i = floor(starts, value);
+            if (i < 0) {
+                return offset;
+            }
+            BigInteger within = value.compareTo(ends[i]) <= 0 ? value.subtract(starts[i]) : ends[i].subtract(starts[i]).add(BigInteger.ONE);
+            return offset.add(before[i]).add(within);
+        }
+
+        UniqueIpResource select(BigInteger index) {
+            int i = floor(before, index);
+            return new Ipv6Address(starts[i].add(index.subtract(before[i])));
+        }
+
+        private static int floor(BigInteger[] values, BigInteger value) {
+            int length = values.length;
+            if (length == 0 || values[0].compareTo(value) > 0) {
+                return -1;
+            }
+            int base = 0;
+            while (length > 1) {
+                int half = length >>> 1;
+                base = values[base + half].compareTo(value) <= 0 ? base + half : base;
+                length -= half;
+            }
+            return base;
+        }
+    }
+}
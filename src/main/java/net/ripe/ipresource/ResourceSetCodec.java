@@ -0,0 +1,119 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Compact binary encoding of normalized resource sets. For each resource type
+ * (in {@link IpResourceType} order) the number of resources is written,
+ * followed by the start and end of every resource in ascending order. ASN and
+ * IPv4 bounds are written as 32-bit unsigned integers, IPv6 bounds as two
+ * 64-bit integers (most significant first).
+ */
+final class ResourceSetCodec {
+
+    private ResourceSetCodec() {
+    }
+
+    static void write(DataOutput out, Collection<IpResource> resources) throws IOException {
+        int[] counts = new int[IpResourceType.values().length];
+        for (IpResource resource : resources) {
+            counts[resource.getType().ordinal()]++;
+        }
+
+        int type = -1;
+        for (IpResource resource : resources) {
+            while (type < resource.getType().ordinal()) {
+                out.writeInt(counts[++type]);
+            }
+            writeBound(out, resource.getStart());
+            writeBound(out, resource.getEnd());
+        }
+        while (type < counts.length - 1) {
+            out.writeInt(counts[++type]);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException the input contains resources that are out of range or not in ascending order
+     */
+    static SortedResourceSetBuilder read(DataInput in) throws IOException {
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder();
+        for (IpResourceType type : IpResourceType.values()) {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IllegalArgumentException("negative resource count: " + count);
+            }
+            for (int i = 0; i < count; ++i) {
+                UniqueIpResource start = readBound(in, type);
+                UniqueIpResource end = readBound(in, type);
+                builder.append(start.equals(end) ? start : start.upTo(end));
+            }
+        }
+        return builder;
+    }
+
+    private static void writeBound(DataOutput out, UniqueIpResource bound) throws IOException {
+        switch (bound.getType()) {
+            case ASN:
+                out.writeInt((int) ((Asn) bound).longValue());
+                break;
+            case IPv4:
+                out.writeInt((int) ((Ipv4Address) bound).longValue());
+                break;
+            case IPv6:
+                Ipv6Address address = (Ipv6Address) bound;
+                out.writeLong(address.highBits());
+                out.writeLong(address.lowBits());
+                break;
+            default:
+                throw new IllegalArgumentException("unknown resource type: " + bound.getType());
+        }
+    }
+
+    private static UniqueIpResource readBound(DataInput in, IpResourceType type) throws IOException {
+        switch (type) {
+            case ASN:
+                return new Asn(Integer.toUnsignedLong(in.readInt()));
+            case IPv4:
+                return new Ipv4Address(Integer.toUnsignedLong(in.readInt()));
+            case IPv6:
+                long highBits = in.readLong();
+                long lowBits = in.readLong();
+                return Ipv6Address.fromBits(highBits, lowBits);
+            default:
+                throw new IllegalArgumentException("unknown resource type: " + type);
+        }
+    }
+}
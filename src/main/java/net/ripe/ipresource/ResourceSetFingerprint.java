@@ -0,0 +1,219 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Locale;
+
+/**
+ * Stable 128-bit fingerprint of the content of a resource set, for comparing sets across processes without
+ * transferring them. The fingerprint is defined by the specification below, independent of Java hash codes, so
+ * it is the same for every JVM and version of this library. It is not cryptographically secure: it detects
+ * accidental differences, not deliberate collisions.
+ * <p>
+ * The fingerprint is the sum, modulo 2<sup>128</sup>, of the hashes of the ranges of the set in canonical form
+ * (disjoint, non-adjacent ranges as iterated by {@link ImmutableResourceSet}). The empty set has fingerprint 0.
+ * As a sum, the fingerprint can be updated when ranges are added or removed, without visiting the other ranges.
+ * </p>
+ * <p>
+ * The hash of a range is computed from five 64-bit words: the type code (1 for ASN, 2 for IPv4, 3 for IPv6),
+ * the most and least significant 64 bits of the start, and the most and least significant 64 bits of the end.
+ * ASNs and IPv4 addresses have zero as most significant bits. The most significant half of the hash starts
+ * from {@code 0x9e3779b97f4a7c15} and the least significant half from {@code 0xc2b2ae3d27d4eb4f}. For every word
+ * {@code w} in order, each half {@code h} becomes {@code mix(h ^ w)}, where {@code mix} is the SplitMix64
+ * finalizer:
+ * </p>
+ * <pre>
+ * z = (z ^ (z &gt;&gt;&gt; 30)) * 0xbf58476d1ce4e5b9
+ * z = (z ^ (z &gt;&gt;&gt; 27)) * 0x94d049bb133111eb
+ * z = z ^ (z &gt;&gt;&gt; 31)
+ * </pre>
+ * <p>
+ * The string form is the 128-bit fingerprint as 32 lowercase hexadecimal digits, most significant first.
+ * </p>
+ */
+public final class ResourceSetFingerprint {
+
+    private static final ResourceSetFingerprint EMPTY = new ResourceSetFingerprint(0, 0);
+
+    private static final long HIGH_SEED = 0x9e3779b97f4a7c15L;
+    private static final long LOW_SEED = 0xc2b2ae3d27d4eb4fL;
+
+    private final long high;
+    private final long low;
+
+    private ResourceSetFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /**
+     * @return the fingerprint of the empty set
+     */
+    public static ResourceSetFingerprint empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @param resources the ranges of a resource set in canonical form, see {@link ImmutableResourceSet#fingerprint()}
+     *                  for resources in any form
+     */
+    static ResourceSetFingerprint of(Iterable<IpResource> resources) {
+        Accumulator accumulator = new Accumulator(EMPTY);
+        for (IpResource resource : resources) {
+            accumulator.add(resource);
+        }
+        return accumulator.toFingerprint();
+    }
+
+    /**
+     * @param s the string form, 32 hexadecimal digits
+     */
+    public static ResourceSetFingerprint parse(String s) {
+        Validate.isTrue(s != null && s.length() == 32, "fingerprint must have 32 hexadecimal digits: %s", s);
+        try {
+            return new ResourceSetFingerprint(Long.parseUnsignedLong(s.substring(0, 16), 16), Long.parseUnsignedLong(s.substring(16), 16));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("fingerprint must have 32 hexadecimal digits: " + s, e);
+        }
+    }
+
+    /**
+     * @return the most significant 64 bits of the fingerprint
+     */
+    public long getHigh() {
+        return high;
+    }
+
+    /**
+     * @return the least significant 64 bits of the fingerprint
+     */
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceSetFingerprint)) {
+            return false;
+        }
+        ResourceSetFingerprint that = (ResourceSetFingerprint) obj;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%016x%016x", high, low);
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Mutable sum of range hashes, for maintaining a fingerprint while ranges are added and removed.
+     */
+    static final class Accumulator {
+        private long high;
+        private long low;
+
+        Accumulator(ResourceSetFingerprint initial) {
+            this.high = initial.high;
+            this.low = initial.low;
+        }
+
+        void add(IpResource resource) {
+            long[] words = words(resource);
+            long hashHigh = hash(HIGH_SEED, words);
+            long hashLow = hash(LOW_SEED, words);
+            long sum = low + hashLow;
+            high += hashHigh + (Long.compareUnsigned(sum, low) < 0 ? 1 : 0);
+            low = sum;
+        }
+
+        void subtract(IpResource resource) {
+            long[] words = words(resource);
+            long hashHigh = hash(HIGH_SEED, words);
+            long hashLow = hash(LOW_SEED, words);
+            long difference = low - hashLow;
+            high -= hashHigh + (Long.compareUnsigned(low, hashLow) < 0 ? 1 : 0);
+            low = difference;
+        }
+
+        ResourceSetFingerprint toFingerprint() {
+            return high == 0 && low == 0 ? EMPTY : new ResourceSetFingerprint(high, low);
+        }
+
+        private static long hash(long seed, long[] words) {
+            long h = seed;
+            for (long word : words) {
+                h = mix(h ^ word);
+            }
+            return h;
+        }
+
+        private static long[] words(IpResource resource) {
+            long[] result = new long[5];
+            UniqueIpResource start = resource.getStart();
+            UniqueIpResource end = resource.getEnd();
+            switch (resource.getType()) {
+                case ASN:
+                    result[0] = 1;
+                    result[2] = ((Asn) start).longValue();
+                    result[4] = ((Asn) end).longValue();
+                    break;
+                case IPv4:
+                    result[0] = 2;
+                    result[2] = ((Ipv4Address) start).longValue();
+                    result[4] = ((Ipv4Address) end).longValue();
+                    break;
+                case IPv6:
+                    result[0] = 3;
+                    result[1] = ((Ipv6Address) start).highBits();
+                    result[2] = ((Ipv6Address) start).lowBits();
+                    result[3] = ((Ipv6Address) end).highBits();
+                    result[4] = ((Ipv6Address) end).lowBits();
+                    break;
+            }
+            return result;
+        }
+    }
+}
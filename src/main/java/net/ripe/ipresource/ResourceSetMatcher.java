@@ -0,0 +1,206 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable matcher compiled from a resource set, for checking single ASNs and addresses against a constant
+ * set in hot loops, such as filtering routes against bogon lists.
+ * <p>
+ * The ranges of every resource type are stored in flat primitive arrays in Eytzinger (breadth-first) order, so
+ * the first levels of the search share a few cache lines. The search descends the implicit tree computing the
+ * next index from the comparison instead of branching on it.
+ * </p>
+ */
+public final class ResourceSetMatcher {
+
+    private final LongTree asns;
+    private final LongTree ipv4;
+    private final Ipv6Tree ipv6;
+
+    ResourceSetMatcher(Iterable<IpResource> resources) {
+        List<IpResource> asnResources = new ArrayList<>();
+        List<IpResource> ipv4Resources = new ArrayList<>();
+        List<IpResource> ipv6Resources = new ArrayList<>();
+        for (IpResource resource : resources) {
+            switch (resource.getType()) {
+                case ASN:
+                    asnResources.add(resource);
+                    break;
+                case IPv4:
+                    ipv4Resources.add(resource);
+                    break;
+                case IPv6:
+                    ipv6Resources.add(resource);
+                    break;
+            }
+        }
+        this.asns = new LongTree(asnResources);
+        this.ipv4 = new LongTree(ipv4Resources);
+        this.ipv6 = new Ipv6Tree(ipv6Resources);
+    }
+
+    /**
+     * @param asn the ASN number, values outside of the ASN space never match
+     */
+    public boolean matchesAsn(long asn) {
+        return (asn >>> Integer.SIZE) == 0 && asns.matches(asn);
+    }
+
+    /**
+     * @param ipv4 the IPv4 address as unsigned 32-bit value
+     */
+    public boolean matches(int ipv4) {
+        return this.ipv4.matches(Integer.toUnsignedLong(ipv4));
+    }
+
+    /**
+     * @param high the most significant 64 bits of the IPv6 address
+     * @param low the least significant 64 bits of the IPv6 address
+     */
+    public boolean matches(long high, long low) {
+        return ipv6.matches(high, low);
+    }
+
+    public boolean matches(UniqueIpResource resource) {
+        switch (resource.getType()) {
+            case ASN:
+                return matchesAsn(((Asn) resource).longValue());
+            case IPv4:
+                return ipv4.matches(((Ipv4Address) resource).longValue());
+            case IPv6:
+                Ipv6Address address = (Ipv6Address) resource;
+                return ipv6.matches(address.highBits(), address.lowBits());
+            default:
+                throw new IllegalStateException("unknown resource type " + resource.getType());
+        }
+    }
+
+    /*
+     * Trees are stored 1-based: the children of node k are 2k and 2k + 1. Descending with "go right when the
+     * start is not after the value" builds the path in the bits of k. The last node where the search went
+     * right, found by dropping the trailing left moves, holds the greatest start not after the value.
+     */
+    private static int predecessor(int k) {
+        return k >>> (Integer.numberOfTrailingZeros(k) + 1);
+    }
+
+    private static void fillEytzinger(int[] order, int[] next, int k) {
+        if (k < order.length) {
+            fillEytzinger(order, next, 2 * k);
+            order[k] = next[0]++;
+            fillEytzinger(order, next, 2 * k + 1);
+        }
+    }
+
+    /*
+     * Maps Eytzinger positions 1..n to indexes in sorted order, position 0 is unused.
+     */
+    private static int[] eytzingerOrder(int n) {
+        int[] order = new int[n + 1];
+        fillEytzinger(order, new int[1], 1);
+        return order;
+    }
+
+    /*
+     * ASN and IPv4 ranges, with bounds as unsigned 32-bit values in longs.
+     */
+    private static final class LongTree {
+        private final long[] starts;
+        private final long[] ends;
+
+        LongTree(List<IpResource> resources) {
+            int[] order = eytzingerOrder(resources.size());
+            this.starts = new long[order.length];
+            this.ends = new long[order.length];
+            for (int k = 1; k < order.length; ++k) {
+                IpResource resource = resources.get(order[k]);
+                starts[k] = resource.getStart().getValue().longValue();
+                ends[k] = resource.getEnd().getValue().longValue();
+            }
+        }
+
+        boolean matches(long value) {
+            int n = starts.length;
+            int k = 1;
+            while (k < n) {
+                // Both operands are within [0, 2^32), so the sign of the difference is the comparison
+                k = 2 * k + (int) (((value - starts[k]) >>> 63) ^ 1);
+            }
+            k = predecessor(k);
+            return k != 0 && value <= ends[k];
+        }
+    }
+
+    /*
+     * IPv6 ranges, with the high and low bits of each start interleaved in a single array so that both halves
+     * of a comparison share a cache line. Bits are stored with the sign flipped, so that signed comparisons
+     * order them as unsigned values.
+     */
+    private static final class Ipv6Tree {
+        private final long[] starts;
+        private final long[] ends;
+
+        Ipv6Tree(List<IpResource> resources) {
+            int[] order = eytzingerOrder(resources.size());
+            this.starts = new long[2 * order.length];
+            this.ends = new long[2 * order.length];
+            for (int k = 1; k < order.length; ++k) {
+                IpResource resource = resources.get(order[k]);
+                Ipv6Address start = (Ipv6Address) resource.getStart();
+                Ipv6Address end = (Ipv6Address) resource.getEnd();
+                starts[2 * k] = start.highBits() ^ Long.MIN_VALUE;
+                starts[2 * k + 1] = start.lowBits() ^ Long.MIN_VALUE;
+                ends[2 * k] = end.highBits() ^ Long.MIN_VALUE;
+                ends[2 * k + 1] = end.lowBits() ^ Long.MIN_VALUE;
+            }
+        }
+
+        boolean matches(long high, long low) {
+            long h = high ^ Long.MIN_VALUE;
+            long l = low ^ Long.MIN_VALUE;
+            int n = starts.length >>> 1;
+            int k = 1;
+            while (k < n) {
+                long startHigh = starts[2 * k];
+                boolean right = startHigh < h | (startHigh == h & starts[2 * k + 1] <= l);
+                k = 2 * k + (right ? 1 : 0);
+            }
+            k = predecessor(k);
+            if (k == 0) {
+                return false;
+            }
+            long endHigh = ends[2 * k];
+            return h < endHigh | (h == endHigh & l <= ends[2 * k + 1]);
+        }
+    }
+}
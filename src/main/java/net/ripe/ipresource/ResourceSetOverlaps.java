@@ -0,0 +1,185 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Finds all pairs of overlapping resource sets among many labelled sets. Instead of intersecting every pair
+ * of sets, the resources of all sets are swept once in order of their start, while keeping the resources
+ * that may still overlap in a queue ordered by end. The running time is proportional to the total number of
+ * resources, times the logarithm of the number of sets, plus the size of the output.
+ */
+public final class ResourceSetOverlaps {
+
+    private ResourceSetOverlaps() {
+    }
+
+    /**
+     * @param sets the resource sets by label
+     * @return the overlapping pairs of sets, ordered by the iteration order of the labels in {@code sets}. The
+     * first label of each pair comes before the second label in this order.
+     */
+    public static <L> List<Overlap<L>> find(Map<L, ImmutableResourceSet> sets) {
+        Validate.notNull(sets, "sets is null");
+        List<L> labels = new ArrayList<>(sets.size());
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, sets.size()), Comparator.comparing(cursor -> cursor.current.getStart()));
+        for (Map.Entry<L, ImmutableResourceSet> entry : sets.entrySet()) {
+            Validate.notNull(entry.getValue(), "resource set is null for label %s", entry.getKey());
+            Iterator<IpResource> iterator = entry.getValue().iterator();
+            if (iterator.hasNext()) {
+                cursors.add(new Cursor(labels.size(), iterator));
+            }
+            labels.add(entry.getKey());
+        }
+
+        long setCount = labels.size();
+        TreeMap<Long, SortedResourceSetBuilder> overlapsByPair = new TreeMap<>();
+        PriorityQueue<Active> active = new PriorityQueue<>(Comparator.comparing(a -> a.resource.getEnd()));
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            IpResource resource = cursor.current;
+            UniqueIpResource start = resource.getStart();
+
+            while (!active.isEmpty() && active.peek().resource.getEnd().compareTo(start) < 0) {
+                active.poll();
+            }
+            for (Active other : active) {
+                UniqueIpResource end = min(other.resource.getEnd(), resource.getEnd());
+                int first = Math.min(other.index, cursor.index);
+                int second = Math.max(other.index, cursor.index);
+                overlapsByPair.computeIfAbsent(first * setCount + second, key -> new SortedResourceSetBuilder())
+                    .append(ImmutableResourceSet.normalize(start.upTo(end)));
+            }
+            active.add(new Active(cursor.index, resource));
+
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+
+        List<Overlap<L>> result = new ArrayList<>(overlapsByPair.size());
+        for (Map.Entry<Long, SortedResourceSetBuilder> entry : overlapsByPair.entrySet()) {
+            L first = labels.get((int) (entry.getKey() / setCount));
+            L second = labels.get((int) (entry.getKey() % setCount));
+            result.add(new Overlap<>(first, second, entry.getValue().build()));
+        }
+        return result;
+    }
+
+    private static UniqueIpResource min(UniqueIpResource a, UniqueIpResource b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static final class Cursor {
+        final int index;
+        final Iterator<IpResource> iterator;
+        IpResource current;
+
+        Cursor(int index, Iterator<IpResource> iterator) {
+            this.index = index;
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        boolean advance() {
+            current = iterator.hasNext() ? iterator.next() : null;
+            return current != null;
+        }
+    }
+
+    private static final class Active {
+        final int index;
+        final IpResource resource;
+
+        Active(int index, IpResource resource) {
+            this.index = index;
+            this.resource = resource;
+        }
+    }
+
+    /**
+     * The resources shared by two labelled resource sets.
+     */
+    public static final class Overlap<L> {
+        private final L first;
+        private final L second;
+        private final ImmutableResourceSet resources;
+
+        public Overlap(L first, L second, ImmutableResourceSet resources) {
+            this.first = first;
+            this.second = second;
+            this.resources = Validate.notNull(resources, "resources is null");
+        }
+
+        public L getFirst() {
+            return first;
+        }
+
+        public L getSecond() {
+            return second;
+        }
+
+        public ImmutableResourceSet getResources() {
+            return resources;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Overlap)) {
+                return false;
+            }
+            Overlap<?> other = (Overlap<?>) obj;
+            return Objects.equals(first, other.first) && Objects.equals(second, other.second) && resources.equals(other.resources);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(first, second, resources);
+        }
+
+        @Override
+        public String toString() {
+            return first + " and " + second + ": " + resources;
+        }
+    }
+}
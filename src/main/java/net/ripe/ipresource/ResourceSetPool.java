@@ -0,0 +1,75 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded pool of canonical resource set instances. The pool only holds weak references, so canonical
+ * instances are removed once they are no longer used elsewhere. When the pool is full, new sets are not
+ * interned until entries have been garbage collected, which keeps canonical instances unique.
+ */
+final class ResourceSetPool {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 1 << 16;
+
+    private final int maximumSize;
+    private final Map<ImmutableResourceSet, WeakReference<ImmutableResourceSet>> pool = new WeakHashMap<>();
+
+    ResourceSetPool(int maximumSize) {
+        if (maximumSize < 0) {
+            throw new IllegalArgumentException("maximum size must not be negative: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * @return the canonical instance equal to the given set, or the set itself when it became canonical or
+     * the pool is full
+     */
+    synchronized ImmutableResourceSet intern(ImmutableResourceSet resources) {
+        WeakReference<ImmutableResourceSet> reference = pool.get(resources);
+        ImmutableResourceSet canonical = reference == null ? null : reference.get();
+        if (canonical != null) {
+            return canonical;
+        }
+        if (pool.size() < maximumSize) {
+            resources.markCanonical(this);
+            pool.put(resources, new WeakReference<>(resources));
+        }
+        return resources;
+    }
+
+    synchronized int size() {
+        return pool.size();
+    }
+}
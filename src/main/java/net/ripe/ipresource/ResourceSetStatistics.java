@@ -0,0 +1,243 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Fragmentation statistics of resource sets: the number of ranges and the size of the largest range per
+ * resource type, and the histogram of prefix lengths of the minimal prefix cover of the IPv4 and IPv6
+ * ranges. The prefix cover is counted with bit arithmetic, without creating prefixes. Statistics of
+ * several sets can be summed with {@link #add(ResourceSetStatistics)}.
+ */
+public final class ResourceSetStatistics {
+
+    private static final ResourceSetStatistics EMPTY = new ResourceSetStatistics();
+
+    private final long[] rangeCounts = new long[IpResourceType.values().length];
+    private final long[] ipv4PrefixLengths = new long[IpResourceType.IPv4.getBitSize() + 1];
+    private final long[] ipv6PrefixLengths = new long[IpResourceType.IPv6.getBitSize() + 1];
+
+    /*
+     * Largest range sizes of ASNs and IPv4, and one less than the largest IPv6 range size as unsigned high
+     * and low bits, since a range can cover all 2^128 IPv6 addresses.
+     */
+    private long largestAsnRange;
+    private long largestIpv4Range;
+    private long largestIpv6RangeHigh;
+    private long largestIpv6RangeLow;
+
+    private ResourceSetStatistics() {
+    }
+
+    public static ResourceSetStatistics empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Computes the statistics of the set of the resources. Resources that are not an {@link ImmutableResourceSet}
+     * are first normalized into one, so overlapping and adjacent resources are counted as a single range.
+     */
+    public static ResourceSetStatistics of(Iterable<? extends IpResource> resources) {
+        ImmutableResourceSet set = resources instanceof ImmutableResourceSet ? (ImmutableResourceSet) resources : ImmutableResourceSet.of(resources);
+        ResourceSetStatistics result = new ResourceSetStatistics();
+        for (IpResource resource : set) {
+            result.add(resource);
+        }
+        return result;
+    }
+
+    private void add(IpResource resource) {
+        IpResourceType type = resource.getType();
+        ++rangeCounts[type.ordinal()];
+        switch (type) {
+            case ASN:
+                largestAsnRange = Math.max(largestAsnRange, ((Asn) resource.getEnd()).longValue() - ((Asn) resource.getStart()).longValue() + 1);
+                break;
+            case IPv4:
+                long start = ((Ipv4Address) resource.getStart()).longValue();
+                long end = ((Ipv4Address) resource.getEnd()).longValue();
+                largestIpv4Range = Math.max(largestIpv4Range, end - start + 1);
+                countPrefixes(ipv4PrefixLengths, 0, start, 0, end);
+                break;
+            case IPv6:
+                Ipv6Address from = (Ipv6Address) resource.getStart();
+                Ipv6Address to = (Ipv6Address) resource.getEnd();
+                long startHigh = from.highBits();
+                long startLow = from.lowBits();
+                long endHigh = to.highBits();
+                long endLow = to.lowBits();
+                long differenceLow = endLow - startLow;
+                long differenceHigh = endHigh - startHigh - (Long.compareUnsigned(endLow, startLow) < 0 ? 1 : 0);
+                if (Ipv6Address.compareBits(differenceHigh, differenceLow, largestIpv6RangeHigh, largestIpv6RangeLow) > 0) {
+                    largestIpv6RangeHigh = differenceHigh;
+                    largestIpv6RangeLow = differenceLow;
+                }
+                countPrefixes(ipv6PrefixLengths, startHigh, startLow, endHigh, endLow);
+                break;
+        }
+    }
+
+    /*
+     * Counts the prefixes of the minimal prefix cover of a range, given as unsigned 128-bit values.
+     */
+    private static void countPrefixes(long[] histogram, long startHigh, long startLow, long endHigh, long endLow) {
+        int bitSize = histogram.length - 1;
+        PrefixIterator.PrefixSplitter splitter = new PrefixIterator.PrefixSplitter(bitSize, startHigh, startLow, endHigh, endLow);
+        while (splitter.hasNext()) {
+            ++histogram[bitSize - splitter.next()];
+        }
+    }
+
+    /**
+     * @return the sum of these and the other statistics, where the largest range is the largest of both
+     */
+    public ResourceSetStatistics add(ResourceSetStatistics other) {
+        ResourceSetStatistics result = new ResourceSetStatistics();
+        for (int i = 0; i < rangeCounts.length; ++i) {
+            result.rangeCounts[i] = rangeCounts[i] + other.rangeCounts[i];
+        }
+        for (int i = 0; i < ipv4PrefixLengths.length; ++i) {
+            result.ipv4PrefixLengths[i] = ipv4PrefixLengths[i] + other.ipv4PrefixLengths[i];
+        }
+        for (int i = 0; i < ipv6PrefixLengths.length; ++i) {
+            result.ipv6PrefixLengths[i] = ipv6PrefixLengths[i] + other.ipv6PrefixLengths[i];
+        }
+        result.largestAsnRange = Math.max(largestAsnRange, other.largestAsnRange);
+        result.largestIpv4Range = Math.max(largestIpv4Range, other.largestIpv4Range);
+        boolean otherIsLarger = Ipv6Address.compareBits(other.largestIpv6RangeHigh, other.largestIpv6RangeLow, largestIpv6RangeHigh, largestIpv6RangeLow) > 0;
+        ResourceSetStatistics largestIpv6 = otherIsLarger ? other : this;
+        result.largestIpv6RangeHigh = largestIpv6.largestIpv6RangeHigh;
+        result.largestIpv6RangeLow = largestIpv6.largestIpv6RangeLow;
+        return result;
+    }
+
+    public long getRangeCount(IpResourceType type) {
+        return rangeCounts[type.ordinal()];
+    }
+
+    public long getRangeCount() {
+        long result = 0;
+        for (long count : rangeCounts) {
+            result += count;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of ASNs or addresses in the largest range of the given type, or zero if there is none
+     */
+    public BigInteger getLargestRangeSize(IpResourceType type) {
+        switch (type) {
+            case ASN:
+                return BigInteger.valueOf(largestAsnRange);
+            case IPv4:
+                return BigInteger.valueOf(largestIpv4Range);
+            default:
+                if (getRangeCount(IpResourceType.IPv6) == 0) {
+                    return BigInteger.ZERO;
+                }
+                return Ipv6Address.fromBits(largestIpv6RangeHigh, largestIpv6RangeLow).getValue().add(BigInteger.ONE);
+        }
+    }
+
+    /**
+     * @return the number of prefixes with the given length in the minimal prefix covers of the IPv4 or IPv6
+     * ranges
+     */
+    public long getPrefixCount(IpResourceType type, int prefixLength) {
+        long[] histogram = histogram(type);
+        Validate.isTrue(prefixLength >= 0 && prefixLength < histogram.length, "illegal prefix length: %d", prefixLength);
+        return histogram[prefixLength];
+    }
+
+    /**
+     * @return a copy of the histogram of prefix lengths for IPv4 or IPv6, indexed by prefix length
+     */
+    public long[] getPrefixLengthHistogram(IpResourceType type) {
+        return histogram(type).clone();
+    }
+
+    private long[] histogram(IpResourceType type) {
+        Validate.isTrue(type != IpResourceType.ASN, "ASNs have no prefixes");
+        return type == IpResourceType.IPv4 ? ipv4PrefixLengths : ipv6PrefixLengths;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ResourceSetStatistics)) {
+            return false;
+        }
+        ResourceSetStatistics that = (ResourceSetStatistics) obj;
+        return Arrays.equals(rangeCounts, that.rangeCounts)
+            && Arrays.equals(ipv4PrefixLengths, that.ipv4PrefixLengths)
+            && Arrays.equals(ipv6PrefixLengths, that.ipv6PrefixLengths)
+            && largestAsnRange == that.largestAsnRange
+            && largestIpv4Range == that.largestIpv4Range
+            && largestIpv6RangeHigh == that.largestIpv6RangeHigh
+            && largestIpv6RangeLow == that.largestIpv6RangeLow;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(rangeCounts);
+        result = 31 * result + Arrays.hashCode(ipv4PrefixLengths);
+        result = 31 * result + Arrays.hashCode(ipv6PrefixLengths);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("ResourceSetStatistics[");
+        for (IpResourceType type : IpResourceType.values()) {
+            result.append(type).append(": ").append(getRangeCount(type)).append(" ranges, largest ").append(getLargestRangeSize(type));
+            if (type != IpResourceType.ASN) {
+                long[] histogram = histogram(type);
+                result.append(", prefixes {");
+                String separator = "";
+                for (int length = 0; length < histogram.length; ++length) {
+                    if (histogram[length] != 0) {
+                        result.append(separator).append('/').append(length).append('=').append(histogram[length]);
+                        separator = ", ";
+                    }
+                }
+                result.append('}');
+            }
+            result.append(type == IpResourceType.IPv6 ? "]" : "; ");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Linear sweeps over resources in ascending order, such as the values of resource maps keyed by end-point.
+ * The input resources of each side must be sorted and not overlap, which holds for all resource sets.
+ */
+final class ResourceSetSweep {
+
+    private ResourceSetSweep() {
+    }
+
+    /**
+     * Reports the parts of the left resources not covered by the right resources, and the parts of the right
+     * resources not covered by the left resources, both in ascending order.
+     */
+    static void difference(Iterator<? extends IpResource> left, Iterator<? extends IpResource> right,
+                           Consumer<? super IpResource> leftOnly, Consumer<? super IpResource> rightOnly) {
+        IpResource leftResource = next(left);
+        IpResource rightResource = next(right);
+        while (leftResource != null && rightResource != null) {
+            UniqueIpResource leftStart = leftResource.getStart();
+            UniqueIpResource rightStart = rightResource.getStart();
+            if (leftResource.getEnd().compareTo(rightStart) < 0) {
+                leftOnly.accept(leftResource);
+                leftResource = next(left);
+            } else if (rightResource.getEnd().compareTo(leftStart) < 0) {
+                rightOnly.accept(rightResource);
+                rightResource = next(right);
+            } else {
+                int compareStart = leftStart.compareTo(rightStart);
+                if (compareStart < 0) {
+                    leftOnly.accept(range(leftStart, rightStart.predecessor()));
+                } else if (compareStart > 0) {
+                    rightOnly.accept(range(rightStart, leftStart.predecessor()));
+                }
+
+                int compareEnd = leftResource.getEnd().compareTo(rightResource.getEnd());
+                if (compareEnd < 0) {
+                    rightResource = range(leftResource.getEnd().successor(), rightResource.getEnd());
+                    leftResource = next(left);
+                } else if (compareEnd > 0) {
+                    leftResource = range(rightResource.getEnd().successor(), leftResource.getEnd());
+                    rightResource = next(right);
+                } else {
+                    leftResource = next(left);
+                    rightResource = next(right);
+                }
+            }
+        }
+        for (; leftResource != null; leftResource = next(left)) {
+            leftOnly.accept(leftResource);
+        }
+        for (; rightResource != null; rightResource = next(right)) {
+            rightOnly.accept(rightResource);
+        }
+    }
+
+    /**
+     * Merges the left and right resources into a single sequence ordered by start, suitable for appending
+     * to a {@link SortedResourceSetBuilder}.
+     */
+    static void merge(Iterator<? extends IpResource> left, Iterator<? extends IpResource> right, Consumer<? super IpResource> result) {
+        IpResource leftResource = next(left);
+        IpResource rightResource = next(right);
+        while (leftResource != null && rightResource != null) {
+            if (leftResource.getStart().compareTo(rightResource.getStart()) <= 0) {
+                result.accept(leftResource);
+                leftResource = next(left);
+            } else {
+                result.accept(rightResource);
+                rightResource = next(right);
+            }
+        }
+        for (; leftResource != null; leftResource = next(left)) {
+            result.accept(leftResource);
+        }
+        for (; rightResource != null; rightResource = next(right)) {
+            result.accept(rightResource);
+        }
+    }
+
+    /**
+     * Merges any number of resource sequences into a single sequence ordered by start, using a heap of the
+     * current resource of each sequence.
+     */
+    static void mergeAll(Collection<? extends Iterator<? extends IpResource>> sources, Consumer<? super IpResource> result) {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, sources.size()), Comparator.comparing(cursor -> cursor.current.getStart()));
+        for (Iterator<? extends IpResource> source : sources) {
+            if (source.hasNext()) {
+                cursors.add(new Cursor(source));
+            }
+        }
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            result.accept(cursor.current);
+            if (cursor.advance()) {
+                cursors.add(cursor);
+            }
+        }
+    }
+
+    /**
+     * Reports the parts covered by all resource sequences, in ascending order. A heap keeps the current
+     * resource of each sequence ordered by end, while the greatest current start only increases.
+     */
+    static void intersectAll(Collection<? extends Iterator<? extends IpResource>> sources, Consumer<? super IpResource> result) {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, sources.size()), Comparator.comparing(cursor -> cursor.current.getEnd()));
+        UniqueIpResource maximumStart = null;
+        for (Iterator<? extends IpResource> source : sources) {
+            if (!source.hasNext()) {
+                return;
+            }
+            Cursor cursor = new Cursor(source);
+            cursors.add(cursor);
+            maximumStart = maximumStart == null ? cursor.current.getStart() : maximumStart.max(cursor.current.getStart());
+        }
+        while (!cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            UniqueIpResource minimumEnd = cursor.current.getEnd();
+            if (maximumStart.compareTo(minimumEnd) <= 0) {
+                result.accept(range(maximumStart, minimumEnd));
+            }
+            if (!cursor.advance()) {
+                return;
+            }
+            maximumStart = maximumStart.max(cursor.current.getStart());
+            cursors.add(cursor);
+        }
+    }
+
+    private static IpResource range(UniqueIpResource start, UniqueIpResource end) {
+        return ImmutableResourceSet.normalize(start.upTo(end));
+    }
+
+    private static IpResource next(Iterator<? extends IpResource> iterator) {
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    private static final class Cursor {
+        private final Iterator<? extends IpResource> iterator;
+        private IpResource current;
+
+        Cursor(Iterator<? extends IpResource> iterator) {
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        boolean advance() {
+            current = next(iterator);
+            return current != null;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * View of the part of a resource set inside a bounding resource. The view is backed by the resource set,
+ * so it does not copy resources, and the resources crossing the bound are clipped while iterating. Views of
+ * mutable resource sets reflect later changes.
+ */
+public final class ResourceSubSet implements Iterable<IpResource> {
+
+    private final Supplier<NavigableMap<UniqueIpResource, IpResource>> resourcesByEndPoint;
+    private final IpResource bound;
+
+    ResourceSubSet(Supplier<NavigableMap<UniqueIpResource, IpResource>> resourcesByEndPoint, IpResource bound) {
+        this.resourcesByEndPoint = resourcesByEndPoint;
+        this.bound = Validate.notNull(bound, "bound is null");
+    }
+
+    public IpResource getBound() {
+        return bound;
+    }
+
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    public boolean contains(IpResource resource) {
+        return bound.contains(resource) && ResourceNavigation.findContaining(resourcesByEndPoint.get(), resource) != null;
+    }
+
+    public boolean intersects(IpResource resource) {
+        IpResource clipped = bound.intersect(resource);
+        if (clipped == null) {
+            return false;
+        }
+        Entry<UniqueIpResource, IpResource> potentialMatch = resourcesByEndPoint.get().ceilingEntry(clipped.getStart());
+        return potentialMatch != null && potentialMatch.getValue().overlaps(clipped);
+    }
+
+    @Override
+    public Iterator<IpResource> iterator() {
+        Iterator<IpResource> candidates = resourcesByEndPoint.get().tailMap(bound.getStart(), true).values().iterator();
+        return new Iterator<IpResource>() {
+            private IpResource next = advance();
+
+            private IpResource advance() {
+                if (!candidates.hasNext()) {
+                    return null;
+                }
+                IpResource candidate = candidates.next();
+                if (candidate.getStart().compareTo(bound.getEnd()) > 0) {
+                    return null;
+                }
+                return bound.contains(candidate) ? candidate : ImmutableResourceSet.normalize(candidate.intersect(bound));
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public IpResource next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                IpResource result = next;
+                next = advance();
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public Spliterator<IpResource> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Stream<IpResource> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * @return a copy of the resources in this view
+     */
+    public ImmutableResourceSet toImmutableResourceSet() {
+        return new SortedResourceSetBuilder().appendAll(this).build();
+    }
+
+    @Override
+    public String toString() {
+        return stream().map(Object::toString).collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Incremental tokenizer for textual resource sets. Resources are separated by commas and/or whitespace,
+ * including newlines. Whitespace around the dash of a range, as in {@code "10.0.0.0 - 10.0.0.255"}, does not
+ * separate resources. Only a single resource is buffered at any time.
+ */
+final class ResourceTokenizer {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /*
+     * Longer than any valid resource, the longest being an IPv6 range with fully written out addresses, so
+     * malformed input cannot grow the token without bound.
+     */
+    private static final int MAXIMUM_TOKEN_LENGTH = 100;
+
+    private final Consumer<? super IpResource> consumer;
+    private final StringBuilder token = new StringBuilder();
+    private boolean afterWhitespace;
+
+    private ResourceTokenizer(Consumer<? super IpResource> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Parses all resources from the reader and passes them to the consumer in input order. The reader is not
+     * closed.
+     *
+     * @throws IllegalArgumentException the input contains an invalid resource
+     */
+    static void parse(Reader reader, Consumer<? super IpResource> consumer) throws IOException {
+        ResourceTokenizer tokenizer = new ResourceTokenizer(consumer);
+        char[] buffer = new char[BUFFER_SIZE];
+        int count;
+        while ((count = reader.read(buffer)) >= 0) {
+            for (int i = 0; i < count; ++i) {
+                tokenizer.accept(buffer[i]);
+            }
+        }
+        tokenizer.flush();
+    }
+
+    private void accept(char c) {
+        if (c == ',') {
+            flush();
+        } else if (Character.isWhitespace(c)) {
+            afterWhitespace = token.length() > 0;
+        } else {
+            if (afterWhitespace && c != '-' && token.charAt(token.length() - 1) != '-') {
+                flush();
+            }
+            afterWhitespace = false;
+            if (token.length() == MAXIMUM_TOKEN_LENGTH) {
+                throw new IllegalArgumentException("resource longer than " + MAXIMUM_TOKEN_LENGTH + " characters: " + token + "...");
+            }
+            token.append(c);
+        }
+    }
+
+    private void flush() {
+        if (token.length() > 0) {
+            consumer.accept(IpResource.parse(token.toString()));
+            token.setLength(0);
+        }
+        afterWhitespace = false;
+    }
+}
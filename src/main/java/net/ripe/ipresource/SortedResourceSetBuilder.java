@@ -0,0 +1,211 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Builds a resource map from resources that are appended in ascending order.
+ * Overlapping and adjacent resources are merged while appending, and the
+ * resulting {@link TreeMap} is constructed in linear time instead of descending
+ * the tree for every resource.
+ */
+final class SortedResourceSetBuilder {
+
+    private List<IpResource> resources;
+    private IpResource last;
+
+    SortedResourceSetBuilder() {
+        this(16);
+    }
+
+    SortedResourceSetBuilder(int expectedSize) {
+        this.resources = new ArrayList<>(expectedSize);
+    }
+
+    /**
+     * Appends a resource. The start of the resource must not be smaller than the
+     * start of any resource appended before.
+     *
+     * @throws IllegalArgumentException the resource is out of order
+     */
+    SortedResourceSetBuilder append(IpResource resource) {
+        assertNotAlreadyUsed();
+        if (last == null) {
+            last = resource;
+        } else if (resource.getStart().compareTo(last.getStart()) < 0) {
+            throw new IllegalArgumentException("resources must be appended in ascending order: " + resource + " after " + last);
+        } else if (last.isMergeable(resource)) {
+            if (!last.contains(resource)) {
+                last = last.merge(resource);
+            }
+        } else {
+            resources.add(ImmutableResourceSet.normalize(last));
+            last = resource;
+        }
+        return this;
+    }
+
+    SortedResourceSetBuilder appendAll(Iterable<? extends IpResource> resources) {
+        for (IpResource resource : resources) {
+            append(resource);
+        }
+        return this;
+    }
+
+    TreeMap<UniqueIpResource, IpResource> buildMap() {
+        assertNotAlreadyUsed();
+        try {
+            if (last != null) {
+                resources.add(ImmutableResourceSet.normalize(last));
+            }
+            return new TreeMap<>(new SortedResources(resources));
+        } finally {
+            resources = null;
+            last = null;
+        }
+    }
+
+    ImmutableResourceSet build() {
+        TreeMap<UniqueIpResource, IpResource> map = buildMap();
+        return map.isEmpty() ? ImmutableResourceSet.empty() : new ImmutableResourceSet(map);
+    }
+
+    private void assertNotAlreadyUsed() {
+        if (resources == null) {
+            throw new IllegalStateException("builder can only be used once");
+        }
+    }
+
+    /*
+     * Read-only sorted map view of the collected resources, keyed by their end-point. It feeds TreeMap's linear
+     * time construction from a sorted map, which only needs the comparator, the size, and an entry iterator,
+     * but implements the full read-only SortedMap contract.
+     */
+    static final class SortedResources extends AbstractMap<UniqueIpResource, IpResource> implements SortedMap<UniqueIpResource, IpResource> {
+        private final List<IpResource> resources;
+
+        SortedResources(List<IpResource> resources) {
+            this.resources = resources;
+        }
+
+        @Override
+        public Comparator<? super UniqueIpResource> comparator() {
+            return null;
+        }
+
+        @Override
+        public Set<Entry<UniqueIpResource, IpResource>> entrySet() {
+            return new AbstractSet<Entry<UniqueIpResource, IpResource>>() {
+                @Override
+                public Iterator<Entry<UniqueIpResource, IpResource>> iterator() {
+                    Iterator<IpResource> iterator = resources.iterator();
+                    return new Iterator<Entry<UniqueIpResource, IpResource>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<UniqueIpResource, IpResource> next() {
+                            IpResource resource = iterator.next();
+                            return new SimpleImmutableEntry<>(resource.getEnd(), resource);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return resources.size();
+                }
+            };
+        }
+
+        @Override
+        public UniqueIpResource firstKey() {
+            if (resources.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return resources.get(0).getEnd();
+        }
+
+        @Override
+        public UniqueIpResource lastKey() {
+            if (resources.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            return resources.get(resources.size() - 1).getEnd();
+        }
+
+        @Override
+        public SortedMap<UniqueIpResource, IpResource> subMap(UniqueIpResource fromKey, UniqueIpResource toKey) {
+            Validate.isTrue(fromKey.compareTo(toKey) <= 0, "fromKey must not be greater than toKey");
+            return new SortedResources(resources.subList(ceilingIndex(fromKey), ceilingIndex(toKey)));
+        }
+
+        @Override
+        public SortedMap<UniqueIpResource, IpResource> headMap(UniqueIpResource toKey) {
+            return new SortedResources(resources.subList(0, ceilingIndex(toKey)));
+        }
+
+        @Override
+        public SortedMap<UniqueIpResource, IpResource> tailMap(UniqueIpResource fromKey) {
+            return new SortedResources(resources.subList(ceilingIndex(fromKey), resources.size()));
+        }
+
+        /*
+         * The index of the first resource with an end-point not less than the key, or the size if there is none.
+         */
+        private int ceilingIndex(UniqueIpResource key) {
+            int low = 0;
+            int high = resources.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (resources.get(middle).getEnd().compareTo(key) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -44,6 +44,11 @@ final class InternalNode<K, V> {
         this.value = value;
     }
 
+    InternalNode(K interval, V value, ChildNodeMap<K, V> children) {
+        this(interval, value);
+        this.children = children;
+    }
+
     public InternalNode(InternalNode<K, V> source, IntervalStrategy<K> strategy) {
         this.key = source.key;
         this.value = source.value;
@@ -29,6 +29,7 @@
  */
 package net.ripe.ipresource.etree;
 
+import java.util.Collection;
 import java.util.Comparator;
 
 
@@ -77,4 +78,15 @@ public interface IntervalStrategy<K> {
      * intervals by ordering intervals on the upper-bound and searching based on the lower-bound.
      */
     Comparator<K> upperBoundComparator();
+
+    /**
+     * Creates a prefilter over the given intervals, used by maps created with
+     * {@link NestedIntervalMap#withPrefilter(IntervalStrategy)}. Strategies do not support prefilters unless
+     * they override this method.
+     *
+     * @throws UnsupportedOperationException this strategy does not support prefilters
+     */
+    default IntervalPrefilter<K> createPrefilter(Collection<? extends K> intervals) {
+        throw new UnsupportedOperationException("prefilters are not supported by " + getClass().getName());
+    }
 }
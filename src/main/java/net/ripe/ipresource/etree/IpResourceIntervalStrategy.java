@@ -29,12 +29,17 @@
  */
 package net.ripe.ipresource.etree;
 
+import java.io.Serializable;
+import java.util.Collection;
 import java.util.Comparator;
 
 import net.ripe.ipresource.IpResource;
+import net.ripe.ipresource.ResourcePrefilter;
 
 
-public class IpResourceIntervalStrategy<T extends IpResource> implements IntervalStrategy<T> {
+public class IpResourceIntervalStrategy<T extends IpResource> implements IntervalStrategy<T>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private IpResourceIntervalStrategy() {
     }
@@ -42,7 +47,7 @@ public class IpResourceIntervalStrategy<T extends IpResource> implements Interva
     public static <T extends IpResource> IpResourceIntervalStrategy<T> getInstance() {
         return new IpResourceIntervalStrategy<T>();
     }
-    private final Comparator<T> upperBoundComparator = new Comparator<T>() {
+    private final transient Comparator<T> upperBoundComparator = new Comparator<T>() {
         @Override
         public int compare(T o1, T o2) {
             return o1.getEnd().compareTo(o2.getEnd());
@@ -69,4 +74,44 @@ public class IpResourceIntervalStrategy<T extends IpResource> implements Interva
     public Comparator<T> upperBoundComparator() {
         return upperBoundComparator;
     }
+
+    /**
+     * @return a prefilter backed by a {@link ResourcePrefilter}
+     */
+    @Override
+    public IntervalPrefilter<T> createPrefilter(Collection<? extends T> intervals) {
+        return new Prefilter<T>(ResourcePrefilter.of(intervals));
+    }
+
+    private Object readResolve() {
+        return getInstance();
+    }
+
+    private static final class Prefilter<T extends IpResource> implements IntervalPrefilter<T> {
+        private final ResourcePrefilter prefilter;
+
+        Prefilter(ResourcePrefilter prefilter) {
+            this.prefilter = prefilter;
+        }
+
+        @Override
+        public void add(T interval) {
+            prefilter.add(interval);
+        }
+
+        @Override
+        public boolean mightOverlap(T interval) {
+            return prefilter.mightIntersect(interval);
+        }
+
+        @Override
+        public long getQueryCount() {
+            return prefilter.getQueryCount();
+        }
+
+        @Override
+        public long getRejectionCount() {
+            return prefilter.getRejectionCount();
+        }
+    }
 }
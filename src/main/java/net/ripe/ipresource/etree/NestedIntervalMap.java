@@ -31,8 +31,14 @@ package net.ripe.ipresource.etree;
 
 import org.apache.commons.lang3.Validate;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -47,21 +53,85 @@ import java.util.List;
  * mappings; merely changing the value associated with an existing key is not a
  * structural modification.) This is typically accomplished by synchronizing on
  * some object that naturally encapsulates the map.
+ * <p>
+ * The map is serializable when its strategy, keys and values are serializable.
  *
  * @param <K> the type of the interval (must implement {@link IntervalStrategy}).
  * @param <V> the type of the values to store.
  */
-public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
+public final class NestedIntervalMap<K, V> implements IntervalMap<K, V>, Serializable {
+    private static final long serialVersionUID = 1L;
+
     private final ChildNodeMap<K, V> children;
 
     private final IntervalStrategy<K> strategy;
 
+    /*
+     * Whether lookups first consult the prefilter, which is only supported by some strategies. The prefilter
+     * is sized for the keys it was built from, so it is dropped and rebuilt on the next lookup once more keys
+     * were added to it than it was built from.
+     */
+    private final transient boolean prefiltered;
+    private transient volatile IntervalPrefilter<K> prefilter;
+    private transient int prefilterKeyCount;
+    private transient int prefilterAdditions;
+
     /**
      * Construct an empty {@link NestedIntervalMap}.
      */
     public NestedIntervalMap(IntervalStrategy<K> strategy) {
+        this(strategy, new ChildNodeTreeMap<K, V>(strategy), false);
+    }
+
+    private NestedIntervalMap(IntervalStrategy<K> strategy, ChildNodeMap<K, V> children, boolean prefiltered) {
         this.strategy = strategy;
-        this.children = new ChildNodeTreeMap<K, V>(strategy);
+        this.children = children;
+        this.prefiltered = prefiltered;
+    }
+
+    /**
+     * Construct an empty {@link NestedIntervalMap} that checks a prefilter created by the strategy before
+     * searching the map. Lookups of keys that do not overlap any key in the map then return without descending
+     * the tree, which pays off when most lookups miss. The prefilter is built on the first lookup, rebuilt as
+     * the map grows, is not updated when keys are removed, and is not serialized.
+     *
+     * @throws UnsupportedOperationException the strategy does not support prefilters
+     */
+    public static <K, V> NestedIntervalMap<K, V> withPrefilter(IntervalStrategy<K> strategy) {
+        NestedIntervalMap<K, V> result = new NestedIntervalMap<K, V>(strategy, new ChildNodeTreeMap<K, V>(strategy), true);
+        result.prefilter = strategy.createPrefilter(Collections.<K>emptyList());
+        return result;
+    }
+
+    /**
+     * @return the prefilter of this map with its lookup statistics since it was last built, or null if the map
+     * has no prefilter
+     */
+    public IntervalPrefilter<K> getPrefilter() {
+        if (!prefiltered) {
+            return null;
+        }
+        IntervalPrefilter<K> result = prefilter;
+        if (result == null) {
+            synchronized (this) {
+                result = prefilter;
+                if (result == null) {
+                    List<K> keys = new ArrayList<K>();
+                    for (InternalNode<K, V> node : children.values()) {
+                        keys.add(node.getKey());
+                    }
+                    result = strategy.createPrefilter(keys);
+                    prefilterKeyCount = keys.size();
+                    prefilterAdditions = 0;
+                    prefilter = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean prefilterRejects(K key) {
+        return prefiltered && !getPrefilter().mightOverlap(key);
     }
 
     /**
@@ -71,8 +141,7 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
      * @param source the source to copy.
      */
     public NestedIntervalMap(NestedIntervalMap<K, V> source, IntervalStrategy<K> strategy) {
-        this.strategy = strategy;
-        this.children = new ChildNodeTreeMap<K, V>(source.children, strategy);
+        this(strategy, new ChildNodeTreeMap<K, V>(source.children, strategy), false);
     }
 
     @Override
@@ -85,6 +154,15 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
         Validate.notNull(key);
         Validate.notNull(value);
         children.addChild(new InternalNode<K, V>(key, value), strategy);
+        IntervalPrefilter<K> current = prefilter;
+        if (current != null) {
+            if (prefilterAdditions < prefilterKeyCount) {
+                current.add(key);
+                ++prefilterAdditions;
+            } else {
+                prefilter = null;
+            }
+        }
     }
 
     @Override
@@ -106,6 +184,9 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
     @Override
     public V findFirstLessSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return null;
+        }
         InternalNode<K, V> node = internalFindFirstLessSpecific(key);
         return mapToValue(node);
     }
@@ -113,18 +194,27 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
     @Override
     public List<V> findAllLessSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return new ArrayList<V>();
+        }
         return mapToValues(internalFindAllLessSpecific(key));
     }
 
     @Override
     public List<V> findExactAndAllLessSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return new ArrayList<V>();
+        }
         return mapToValues(internalFindExactAndAllLessSpecific(key));
     }
 
     @Override
     public V findExact(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return null;
+        }
         InternalNode<K, V> node = internalFindExact(key);
         return node == null ? null : node.getValue();
     }
@@ -132,24 +222,36 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
     @Override
     public V findExactOrFirstLessSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return null;
+        }
         return mapToValue(internalFindExactOrFirstLessSpecific(key));
     }
 
     @Override
     public List<V> findFirstMoreSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return new ArrayList<V>();
+        }
         return mapToValues(internalFindFirstMoreSpecific(key));
     }
 
     @Override
     public List<V> findAllMoreSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return new ArrayList<V>();
+        }
         return mapToValues(internalFindAllMoreSpecific(key));
     }
 
     @Override
     public List<V> findExactAndAllMoreSpecific(K key) {
         Validate.notNull(key);
+        if (prefilterRejects(key)) {
+            return new ArrayList<V>();
+        }
         return mapToValues(internalFindExactAndAllMoreSpecific(key));
     }
 
@@ -159,6 +261,7 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
     @Override
     public void clear() {
         children.clear();
+        prefilter = null;
     }
 
     @Override
@@ -280,6 +383,75 @@ public final class NestedIntervalMap<K, V> implements IntervalMap<K, V> {
         return result;
     }
 
+    private Object writeReplace() {
+        return new SerializationProxy<K, V>(this);
+    }
+
+    private void readObject(ObjectInputStream in) throws InvalidObjectException {
+        throw new InvalidObjectException("serialization proxy required");
+    }
+
+    /*
+     * Serialized form of the map: the strategy followed by the nodes in pre-order, each written as key,
+     * value, and number of child nodes. Since siblings are written in order and nesting is explicit, the
+     * map is rebuilt without searching for containing or overlapping intervals.
+     */
+    private static final class SerializationProxy<K, V> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private transient NestedIntervalMap<K, V> map;
+
+        SerializationProxy(NestedIntervalMap<K, V> map) {
+            this.map = map;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+            out.writeObject(map.strategy);
+            writeNodes(out, map.children);
+        }
+
+        private void writeNodes(ObjectOutputStream out, ChildNodeMap<K, V> nodes) throws IOException {
+            out.writeInt(nodes.values().size());
+            for (InternalNode<K, V> node : nodes.values()) {
+                out.writeObject(node.getKey());
+                out.writeObject(node.getValue());
+                writeNodes(out, node.getChildren());
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            IntervalStrategy<K> strategy = (IntervalStrategy<K>) in.readObject();
+            ChildNodeTreeMap<K, V> children = new ChildNodeTreeMap<K, V>(strategy);
+            readNodes(in, children, strategy);
+            map = new NestedIntervalMap<K, V>(strategy, children, false);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void readNodes(ObjectInputStream in, ChildNodeTreeMap<K, V> nodes, IntervalStrategy<K> strategy) throws IOException, ClassNotFoundException {
+            int count = in.readInt();
+            if (count < 0) {
+                throw new InvalidObjectException("negative node count: " + count);
+            }
+            for (int i = 0; i < count; ++i) {
+                K key = (K) in.readObject();
+                V value = (V) in.readObject();
+                if (key == null || value == null) {
+                    throw new InvalidObjectException("null key or value");
+                }
+                ChildNodeTreeMap<K, V> children = new ChildNodeTreeMap<K, V>(strategy);
+                readNodes(in, children, strategy);
+                nodes.put(key, new InternalNode<K, V>(key, value, children.isEmpty() ? ChildNodeTreeMap.<K, V>empty() : children));
+            }
+        }
+
+        private Object readResolve() {
+            return map;
+        }
+    }
+
     public abstract static class Key<K extends IntervalStrategy<K>> {
         private final K key;
 
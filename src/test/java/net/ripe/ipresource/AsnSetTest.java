@@ -0,0 +1,142 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class AsnSetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_from_and_to_resource_set() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1-AS10, AS11, AS3333, 10.0.0.0/8");
+
+        AsnSet subject = resources.getAsnSet();
+
+        assertEquals("AS1-AS11, AS3333", subject.toString());
+        assertEquals(2, subject.getRangeCount());
+        assertEquals(IpResource.parse("AS3333"), subject.getRange(1));
+        assertEquals(12, subject.getAsnCount());
+        assertEquals(ImmutableResourceSet.parse("AS1-AS11, AS3333"), subject.toImmutableResourceSet());
+        assertEquals(subject, AsnSet.of(subject.toImmutableResourceSet()));
+        assertEquals(subject, AsnSet.of(subject));
+        assertEquals(AsnSet.empty(), ImmutableResourceSet.parse("10.0.0.0/8").getAsnSet());
+        assertThrows(IllegalArgumentException.class, () -> AsnSet.of(resources));
+        assertThrows(IllegalArgumentException.class, () -> subject.getRange(2));
+    }
+
+    @Test
+    public void should_query_primitive_values() {
+        AsnSet subject = ImmutableResourceSet.parse("AS10-AS19, AS30, AS4294967295").getAsnSet();
+
+        assertTrue(subject.contains(10));
+        assertTrue(subject.contains(30));
+        assertTrue(subject.contains(4294967295L));
+        assertFalse(subject.contains(9));
+        assertFalse(subject.contains(20));
+        assertFalse(subject.contains(-1));
+        assertFalse(subject.contains(4294967296L));
+        assertTrue(subject.contains(12, 19));
+        assertFalse(subject.contains(12, 20));
+        assertTrue(subject.intersects(0, 10));
+        assertTrue(subject.intersects(20, 30));
+        assertFalse(subject.intersects(20, 29));
+        assertThrows(IllegalArgumentException.class, () -> subject.contains(2, 1));
+    }
+
+    @Test
+    public void should_compute_set_algebra() {
+        AsnSet left = ImmutableResourceSet.parse("AS0-AS10, AS20-AS30").getAsnSet();
+        AsnSet right = ImmutableResourceSet.parse("AS5-AS24, AS31").getAsnSet();
+
+        assertEquals("AS0-AS31", left.union(right).toString());
+        assertEquals("AS5-AS10, AS20-AS24", left.intersection(right).toString());
+        assertEquals("AS0-AS4, AS25-AS30", left.difference(right).toString());
+        assertEquals("AS11-AS19, AS31-AS4294967295", left.complement().toString());
+        assertEquals(AsnSet.universal(), AsnSet.empty().complement());
+        assertEquals(AsnSet.empty(), AsnSet.universal().complement());
+        assertTrue(left.contains(left.intersection(right)));
+        assertFalse(left.contains(right));
+        assertTrue(left.intersects(right));
+        assertFalse(left.intersects(left.complement()));
+    }
+
+    @Test
+    public void should_match_resource_set_algebra() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet left = randomSet();
+            ImmutableResourceSet right = randomSet();
+            AsnSet leftAsns = left.getAsnSet();
+            AsnSet rightAsns = right.getAsnSet();
+
+            assertEquals(left.union(right).getAsnSet(), leftAsns.union(rightAsns));
+            assertEquals(left.intersection(right).getAsnSet(), leftAsns.intersection(rightAsns));
+            assertEquals(left.difference(right).getAsnSet(), leftAsns.difference(rightAsns));
+            assertEquals(left.complement().getAsnSet(), leftAsns.complement());
+            assertEquals(left.contains(right), leftAsns.contains(rightAsns));
+            assertEquals(left.intersects(right), leftAsns.intersects(rightAsns));
+            assertEquals(left, leftAsns.toImmutableResourceSet());
+        }
+    }
+
+    @Test
+    public void should_look_up_values_like_resource_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = randomSet();
+            AsnSet subject = resources.getAsnSet();
+            for (int j = 0; j < 100; ++j) {
+                long start = random.nextInt(120);
+                long end = start + random.nextInt(5);
+                assertEquals(resources.contains(new Asn(start)), subject.contains(start));
+                assertEquals(resources.intersects(IpResourceRange.range(new Asn(start), new Asn(end))), subject.intersects(start, end));
+            }
+        }
+    }
+
+    private ImmutableResourceSet randomSet() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        int size = random.nextInt(10);
+        for (int i = 0; i < size; ++i) {
+            long start = random.nextInt(100);
+            builder.add(IpResourceRange.range(new Asn(start), new Asn(start + random.nextInt(10))));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIpResourceSetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_merge_and_split_ranges() {
+        ConcurrentIpResourceSet subject = new ConcurrentIpResourceSet();
+        subject.add(parse("10.0.0.0/25"));
+        subject.add(parse("10.0.0.128/25"));
+        subject.add(parse("AS1-AS5"));
+        subject.add(parse("AS6"));
+
+        assertEquals(ImmutableResourceSet.parse("AS1-AS6, 10.0.0.0/24"), subject.snapshot());
+        assertTrue(subject.contains(parse("10.0.0.100-10.0.0.200")));
+        assertTrue(subject.intersects(parse("10.0.0.0/8")));
+
+        assertTrue(subject.remove(parse("10.0.0.64/26")));
+        assertFalse(subject.remove(parse("11.0.0.0/8")));
+        assertTrue(subject.remove(parse("AS1-AS3")));
+
+        assertEquals(ImmutableResourceSet.parse("AS4-AS6, 10.0.0.0/26, 10.0.0.128/25"), subject.snapshot());
+        assertEquals("AS4-AS6, 10.0.0.0/26, 10.0.0.128/25", subject.toString());
+    }
+
+    @Test
+    public void should_match_IpResourceSet() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ConcurrentIpResourceSet subject = new ConcurrentIpResourceSet();
+            IpResourceSet expected = new IpResourceSet();
+            for (int j = 0; j < 20; ++j) {
+                IpResourceRange range = randomResourceRange();
+                if (random.nextInt(3) == 0) {
+                    assertEquals(expected.remove(range), subject.remove(range));
+                } else {
+                    expected.add(range);
+                    subject.add(range);
+                }
+            }
+            assertEquals(ImmutableResourceSet.of(expected), subject.snapshot());
+        }
+    }
+
+    @Test
+    public void should_add_and_remove_concurrently() throws Exception {
+        ConcurrentIpResourceSet subject = new ConcurrentIpResourceSet(ImmutableResourceSet.parse("AS1-AS1000, 10.0.0.0/8"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicBoolean done = new AtomicBoolean();
+        try {
+            Future<?> reader = executor.submit(() -> {
+                while (!done.get()) {
+                    assertTrue(subject.contains(parse("AS500")));
+                    assertTrue(subject.contains(parse("10.128.0.0/9")));
+                }
+            });
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < 3; ++thread) {
+                int offset = thread;
+                writers.add(executor.submit(() -> {
+                    for (int i = offset; i < 3000; i += 3) {
+                        subject.add(new Ipv4Address(0x0b000000L + 2 * i));
+                        subject.add(new Asn(2000L + 2 * i));
+                        subject.remove(IpRange.prefix(new Ipv4Address(0x0a000000L + 256L * i), 24));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(1, TimeUnit.MINUTES);
+            }
+            done.set(true);
+            reader.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ImmutableResourceSet.Builder expected = new ImmutableResourceSet.Builder(ImmutableResourceSet.parse("AS1-AS1000, 10.0.0.0/8"));
+        for (int i = 0; i < 3000; ++i) {
+            expected.add(new Ipv4Address(0x0b000000L + 2 * i));
+            expected.add(new Asn(2000L + 2 * i));
+            expected.remove(IpRange.prefix(new Ipv4Address(0x0a000000L + 256L * i), 24));
+        }
+        assertEquals(expected.build(), subject.snapshot());
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        BigInteger start = BigInteger.valueOf(random.nextInt(1 << 12));
+        BigInteger end = start.add(BigInteger.valueOf(random.nextInt(1 << 8)));
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
@@ -29,13 +29,21 @@
  */
 package net.ripe.ipresource;
 
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
 import java.util.Random;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static net.ripe.ipresource.ImmutableResourceSet.ALL_PRIVATE_USE_RESOURCES;
@@ -375,6 +383,435 @@ public class ImmutableResourceSetTest {
         assertTrue("all resources removed: " + subject, subject.isEmpty());
     }
 
+    @Test
+    public void should_decompose_into_minimal_prefixes() {
+        assertEquals("", prefixes("AS1-AS10", 32, 128));
+        assertEquals("10.0.0.0/8", prefixes("AS1, 10.0.0.0/8", 32, 128));
+        assertEquals("10.0.0.1/32, 10.0.0.2/31, 10.0.0.4/30, 10.0.0.8/32", prefixes("10.0.0.1-10.0.0.8", 32, 128));
+        assertEquals("0.0.0.0/0, ::/0", prefixes("0.0.0.0/0, ::/0", 32, 128));
+        assertEquals("0.0.0.0/32, 255.255.255.255/32", prefixes("0.0.0.0, 255.255.255.255", 32, 128));
+        assertEquals("::/128, 2001:db8::/31, ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff/128", prefixes("::, 2001:db8::-2001:db9:ffff:ffff:ffff:ffff:ffff:ffff, ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", 32, 128));
+        assertEquals("::ffff:ffff:ffff:ffff/128, 0:0:0:1::/128", prefixes("::ffff:ffff:ffff:ffff-::1:0:0:0:0", 32, 128));
+    }
+
+    @Test
+    public void should_widen_prefixes_longer_than_maximum_length() {
+        assertEquals("10.0.0.0/24", prefixes("10.0.0.1, 10.0.0.5, 10.0.0.128/25", 24, 128));
+        assertEquals("10.0.0.0/23, 10.0.3.0/24", prefixes("10.0.0.255-10.0.1.0, 10.0.3.7", 24, 128));
+        assertEquals("10.0.0.0/24, 2001:db8::/32", prefixes("10.0.0.0/25, 2001:db8::/48", 24, 32));
+        assertEquals("0.0.0.0/0", prefixes("10.0.0.1", 0, 128));
+
+        assertThrows(IllegalArgumentException.class, () -> empty().prefixes(33, 128));
+        assertThrows(IllegalArgumentException.class, () -> empty().prefixes(32, -1));
+    }
+
+    @Test
+    public void should_decompose_random_sets_into_prefixes() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet subject = randomSet(10);
+            List<IpRange> expected = new ArrayList<>();
+            for (IpResource resource : subject) {
+                if (resource.getType() != IpResourceType.ASN) {
+                    expected.addAll(IpRange.range((IpAddress) resource.getStart(), (IpAddress) resource.getEnd()).splitToPrefixes());
+                }
+            }
+
+            assertEquals(expected, subject.prefixes().collect(Collectors.toList()));
+
+            ImmutableResourceSet capped = ImmutableResourceSet.of(subject.prefixes(16, 16).collect(Collectors.toList()));
+            assertTrue(capped.contains(subject.difference(ImmutableResourceSet.parse("AS0-AS4294967295"))));
+            assertTrue(subject.prefixes(16, 16).allMatch(prefix -> prefix.getPrefixLength() <= 16));
+        }
+    }
+
+    @Test
+    public void should_diff_in_single_sweep() {
+        ImmutableResourceSet before = ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 192.168.0.0/16, 2001:db8::/32");
+        ImmutableResourceSet after = ImmutableResourceSet.parse("AS5-AS20, 10.0.0.0/9, 172.16.0.0/12, 192.168.0.0/16, 2001:db8::/31");
+
+        ImmutableResourceSet.Delta delta = before.diff(after);
+
+        assertEquals(ImmutableResourceSet.parse("AS11-AS20, 172.16.0.0/12, 2001:db9::/32"), delta.getAdded());
+        assertEquals(ImmutableResourceSet.parse("AS1-AS4, 10.128.0.0/9"), delta.getRemoved());
+        assertEquals(after, before.applyDelta(delta));
+        assertEquals(before, after.applyDelta(delta.getRemoved(), delta.getAdded()));
+
+        assertTrue(before.diff(before).isEmpty());
+        assertSame(before, before.applyDelta(empty(), empty()));
+        assertEquals(new ImmutableResourceSet.Delta(before, empty()), empty().diff(before));
+    }
+
+    @Test
+    public void should_stream_diff() {
+        ImmutableResourceSet before = ImmutableResourceSet.parse("10.0.0.0-10.0.0.10, 10.0.0.20-10.0.0.30");
+        ImmutableResourceSet after = ImmutableResourceSet.parse("10.0.0.5-10.0.0.25");
+        List<IpResource> added = new ArrayList<>();
+        List<IpResource> removed = new ArrayList<>();
+
+        before.diff(after, added::add, removed::add);
+
+        assertEquals(Collections.singletonList(parse("10.0.0.11-10.0.0.19")), added);
+        assertEquals(Arrays.asList(parse("10.0.0.0-10.0.0.4"), parse("10.0.0.26-10.0.0.30")), removed);
+    }
+
+    @Test
+    public void should_diff_random_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet before = randomSet(10);
+            ImmutableResourceSet after = randomSet(10);
+
+            ImmutableResourceSet.Delta delta = before.diff(after);
+
+            assertEquals(after.difference(before), delta.getAdded());
+            assertEquals(before.difference(after), delta.getRemoved());
+            assertEquals(after, before.applyDelta(delta));
+            assertEquals(before.intersection(after), before.applyDelta(empty(), delta.getRemoved()));
+        }
+    }
+
+    @Test
+    public void should_share_canonical_instances() {
+        ImmutableResourceSet first = ImmutableResourceSet.parse("AS3333, 10.0.0.0/8, 2001:db8::/32").canonical();
+        ImmutableResourceSet second = ImmutableResourceSet.parse("2001:db8::/32, 10.0.0.0/8, AS3333");
+        ImmutableResourceSet other = ImmutableResourceSet.parse("AS3333, 10.0.0.0/8").canonical();
+
+        assertSame(first, second.canonical());
+        assertSame(first, first.canonical());
+        assertEquals(first, second);
+        assertEquals(second, first);
+        assertNotEquals(first, other);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void should_compare_canonical_instances_of_different_pools_by_content() {
+        ImmutableResourceSet first = new ResourceSetPool(1).intern(ImmutableResourceSet.parse("10.0.0.0/8"));
+        ImmutableResourceSet second = new ResourceSetPool(1).intern(ImmutableResourceSet.parse("10.0.0.0/8"));
+
+        assertNotSame(first, second);
+        assertEquals(first, second);
+        assertEquals(first, second.canonical());
+    }
+
+    @Test
+    public void should_not_intern_beyond_pool_size() {
+        ResourceSetPool pool = new ResourceSetPool(1);
+        ImmutableResourceSet first = ImmutableResourceSet.parse("10.0.0.0/8");
+        ImmutableResourceSet second = ImmutableResourceSet.parse("11.0.0.0/8");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(ImmutableResourceSet.parse("10.0.0.0/8")));
+        assertSame(second, pool.intern(second));
+        assertSame(first, pool.intern(ImmutableResourceSet.parse("10.0.0.0/8")));
+        assertNotSame(second, pool.intern(ImmutableResourceSet.parse("11.0.0.0/8")));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void should_parse_from_reader() throws IOException {
+        assertSame(empty(), ImmutableResourceSet.parse(new StringReader(" ,\n, ")));
+        assertEquals(ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 192.168.0.0-192.168.0.255, 2001:db8::/32"),
+            ImmutableResourceSet.parse(new StringReader("AS1 -AS10\n10.0.0.0/8,,192.168.0.0 - 192.168.0.255\t2001:db8::/32\n")));
+
+        assertThrows(IllegalArgumentException.class, () -> ImmutableResourceSet.parse(new StringReader("10.0.0.0/8 foo")));
+        assertThrows(IllegalArgumentException.class, () -> ImmutableResourceSet.parse(new StringReader("10.0.0.0 -, 10.0.0.1")));
+        assertEquals(ImmutableResourceSet.parse("::ffff:0.0.0.0-::ffff:255.255.255.255"),
+            ImmutableResourceSet.parse(new StringReader("0000:0000:0000:0000:0000:ffff:0.0.0.0 - 0000:0000:0000:0000:0000:ffff:255.255.255.255")));
+        assertThrows(IllegalArgumentException.class, () -> ImmutableResourceSet.parse(new StringReader(StringUtils.repeat('1', 101))));
+    }
+
+    @Test
+    public void should_parse_tokens_spanning_reader_buffers() throws IOException {
+        StringBuilder input = new StringBuilder();
+        ImmutableResourceSet.Builder expected = new ImmutableResourceSet.Builder();
+        for (int i = 0; i < 5000; ++i) {
+            Asn asn = new Asn(2L * i);
+            input.append(asn).append(i % 3 == 0 ? "\n" : " , ");
+            expected.add(asn);
+        }
+
+        assertEquals(expected.build(), ImmutableResourceSet.parse(new StringReader(input.toString())));
+    }
+
+    @Test
+    public void should_look_up_address_batches() {
+        ImmutableResourceSet subject = ImmutableResourceSet.parse("AS1, 0.0.0.0, 10.0.0.0/8, 255.255.255.0/24, ::/128, 2001:db8::/32, ffff::/16");
+
+        BitSet ipv4 = subject.containsIpv4(new int[]{0, 1, 0x0a000001, 0xffffff01, 0x0b000000, 0x0a000000});
+        assertEquals(BitSet.valueOf(new long[]{0b101101}), ipv4);
+        assertEquals(ipv4, subject.containsIpv4(new long[]{0, 1, 0x0a000001L, 0xffffff01L, 0x0b000000L, 0x0a000000L}));
+        assertEquals(BitSet.valueOf(new long[]{0b0110}), subject.containsIpv4(new long[]{-1, 0x0a000000L, 0xffffffffL, 0x100000000L}));
+
+        BitSet ipv6 = subject.containsIpv6(new long[]{0, 0, 0, 1, 0x20010db800000000L, 5, 0xffff000000000000L, 0, 0x20010db900000000L, 0});
+        assertEquals(BitSet.valueOf(new long[]{0b01101}), ipv6);
+
+        assertTrue(empty().containsIpv4(new int[]{0, 1}).isEmpty());
+        assertTrue(empty().containsIpv6(new long[]{0, 1}).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> subject.containsIpv6(new long[]{0}));
+    }
+
+    @Test
+    public void should_look_up_random_address_batches() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet subject = randomSet(10);
+            int[] ipv4 = random.ints(64, 0, Integer.MAX_VALUE).toArray();
+            long[] ipv6 = random.longs(128, 0, Integer.MAX_VALUE).toArray();
+            for (int j = 0; j < ipv6.length; j += 2) {
+                ipv6[j] = 0;
+            }
+
+            for (boolean sorted : new boolean[]{false, true}) {
+                if (sorted) {
+                    Arrays.sort(ipv4);
+                    long[] lows = new long[ipv6.length / 2];
+                    for (int j = 0; j < lows.length; ++j) {
+                        lows[j] = ipv6[2 * j + 1];
+                    }
+                    Arrays.sort(lows);
+                    for (int j = 0; j < lows.length; ++j) {
+                        ipv6[2 * j + 1] = lows[j];
+                    }
+                }
+
+                BitSet ipv4Result = subject.containsIpv4(ipv4);
+                for (int j = 0; j < ipv4.length; ++j) {
+                    assertEquals(subject.contains(new Ipv4Address(ipv4[j])), ipv4Result.get(j));
+                }
+                BitSet ipv6Result = subject.containsIpv6(ipv6);
+                for (int j = 0; j < ipv6.length / 2; ++j) {
+                    assertEquals(subject.contains(new Ipv6Address(BigInteger.valueOf(ipv6[2 * j + 1]))), ipv6Result.get(j));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void should_look_up_sorted_batches_against_many_ranges() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        for (long i = 0; i < 5000; ++i) {
+            builder.add(IpRange.range(new Ipv4Address(1000 * i), new Ipv4Address(1000 * i + 10)));
+            builder.add(IpRange.range(Ipv6Address.fromBits(i, 0), Ipv6Address.fromBits(i, 10)));
+        }
+        ImmutableResourceSet subject = builder.build();
+
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            long[] ipv4 = random.longs(1 + random.nextInt(20), 0, 5_000_000).sorted().toArray();
+            BitSet ipv4Result = subject.containsIpv4(ipv4);
+            long[] ipv6 = new long[2 * ipv4.length];
+            for (int j = 0; j < ipv4.length; ++j) {
+                assertEquals(subject.contains(new Ipv4Address(ipv4[j])), ipv4Result.get(j));
+                ipv6[2 * j] = ipv4[j] / 1000;
+                ipv6[2 * j + 1] = ipv4[j] % 1000;
+            }
+            BitSet ipv6Result = subject.containsIpv6(ipv6);
+            for (int j = 0; j < ipv4.length; ++j) {
+                assertEquals(subject.contains(Ipv6Address.fromBits(ipv6[2 * j], ipv6[2 * j + 1])), ipv6Result.get(j));
+            }
+        }
+    }
+
+    @Test
+    public void should_consult_prefilter() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS3333, 10.0.0.0/8, 2001:db8::/32");
+        ImmutableResourceSet subject = resources.withPrefilter();
+
+        assertNull(resources.getPrefilter());
+        assertEquals(resources, subject);
+        assertSame(subject, subject.withPrefilter());
+        assertSame(empty(), empty().withPrefilter());
+
+        assertTrue(subject.contains(parse("10.1.0.0/16")));
+        assertFalse(subject.contains(parse("11.0.0.0/16")));
+        assertTrue(subject.intersects(parse("2001::/16")));
+        assertFalse(subject.intersects(parse("AS70000")));
+        assertEquals(4, subject.getPrefilter().getQueryCount());
+        assertEquals(2, subject.getPrefilter().getRejectionCount());
+    }
+
+    @Test
+    public void should_find_containing_and_neighbouring_resources() {
+        ImmutableResourceSet subject = ImmutableResourceSet.parse("AS10-AS20, 10.0.0.0/8, 12.0.0.0/8, 14.0.0.1, 2001:db8::/32");
+
+        assertEquals(parse("10.0.0.0/8"), subject.findContaining(parse("10.1.0.0/16")));
+        assertNull(subject.findContaining(parse("10.0.0.0/7")));
+        assertNull(subject.findContaining(parse("11.0.0.0")));
+
+        assertEquals(parse("10.0.0.0/8"), subject.floor(parse("11.0.0.0")));
+        assertEquals(parse("12.0.0.0/8"), subject.floor(parse("12.1.0.0")));
+        assertNull(subject.floor(parse("9.0.0.0/8")));
+        assertEquals(parse("10.0.0.0/8"), subject.lower(parse("11.0.0.0-12.1.0.0")));
+        assertNull(subject.lower(parse("10.0.0.0")));
+
+        assertEquals(parse("12.0.0.0/8"), subject.ceiling(parse("11.0.0.0")));
+        assertEquals(parse("10.0.0.0/8"), subject.ceiling(parse("10.1.0.0")));
+        assertEquals(parse("14.0.0.1"), subject.higher(parse("12.0.0.0")));
+        assertEquals(parse("12.0.0.0/8"), subject.higher(parse("10.0.0.0/7")));
+        assertNull(subject.higher(parse("14.0.0.1")));
+        assertNull(subject.ceiling(parse("15.0.0.0")));
+
+        assertNull(subject.lower(parse("1.0.0.0")));
+        assertEquals(parse("AS10-AS20"), subject.lower(parse("AS21")));
+        assertNull(subject.higher(parse("AS20")));
+        assertEquals(parse("2001:db8::/32"), subject.higher(parse("::1")));
+    }
+
+    @Test
+    public void should_find_neighbours_of_random_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet subject = randomSet(10);
+            IpResourceRange query = randomResourceRange();
+
+            IpResource floor = null;
+            IpResource lower = null;
+            IpResource ceiling = null;
+            IpResource higher = null;
+            IpResource containing = null;
+            for (IpResource resource : subject) {
+                if (resource.getType() != query.getType()) {
+                    continue;
+                }
+                if (resource.getStart().compareTo(query.getStart()) <= 0) {
+                    floor = resource;
+                }
+                if (resource.getEnd().compareTo(query.getStart()) < 0) {
+                    lower = resource;
+                }
+                if (ceiling == null && resource.getEnd().compareTo(query.getEnd()) >= 0) {
+                    ceiling = resource;
+                }
+                if (higher == null && resource.getStart().compareTo(query.getEnd()) > 0) {
+                    higher = resource;
+                }
+                if (resource.contains(query)) {
+                    containing = resource;
+                }
+            }
+
+            assertEquals(floor, subject.floor(query));
+            assertEquals(lower, subject.lower(query));
+            assertEquals(ceiling, subject.ceiling(query));
+            assertEquals(higher, subject.higher(query));
+            assertEquals(containing, subject.findContaining(query));
+        }
+    }
+
+    @Test
+    public void should_union_and_intersect_many_sets() {
+        List<ImmutableResourceSet> sets = Arrays.asList(
+            ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 2001:db8::/32"),
+            ImmutableResourceSet.parse("AS5-AS20, 10.0.0.0/16, 10.2.0.0/16, 2001:db8::/48"),
+            ImmutableResourceSet.parse("AS8-AS30, 10.0.128.0-10.2.0.0")
+        );
+
+        assertEquals(ImmutableResourceSet.parse("AS1-AS30, 10.0.0.0/8, 2001:db8::/32"), ImmutableResourceSet.unionAll(sets));
+        assertEquals(ImmutableResourceSet.parse("AS8-AS10, 10.0.128.0/17, 10.2.0.0"), ImmutableResourceSet.intersectAll(sets));
+
+        assertSame(empty(), ImmutableResourceSet.unionAll(Collections.emptyList()));
+        assertSame(universal(), ImmutableResourceSet.intersectAll(Collections.emptyList()));
+        assertSame(sets.get(0), ImmutableResourceSet.intersectAll(Collections.singletonList(sets.get(0))));
+        assertSame(empty(), ImmutableResourceSet.intersectAll(Arrays.asList(sets.get(0), empty())));
+    }
+
+    @Test
+    public void should_union_and_intersect_many_random_sets() {
+        for (int i = 0; i < RANDOM_SIZE / 10; ++i) {
+            List<ImmutableResourceSet> sets = new ArrayList<>();
+            int count = 1 + random.nextInt(300);
+            for (int j = 0; j < count; ++j) {
+                sets.add(j % 2 == 0 ? randomSet(20) : universal().difference(randomSet(3)));
+            }
+
+            ImmutableResourceSet union = empty();
+            ImmutableResourceSet intersection = universal();
+            for (ImmutableResourceSet set : sets) {
+                union = union.union(set);
+                intersection = intersection.intersection(set);
+            }
+
+            assertEquals(union, ImmutableResourceSet.unionAll(sets));
+            assertEquals(union, ImmutableResourceSet.parallelUnionAll(sets));
+            assertEquals(intersection, ImmutableResourceSet.intersectAll(sets));
+            assertEquals(intersection, ImmutableResourceSet.parallelIntersectAll(sets));
+        }
+    }
+
+    @Test
+    public void should_compute_parallel_algebra_like_sequential_algebra() {
+        for (int i = 0; i < 3; ++i) {
+            ImmutableResourceSet a = randomDenseSet(30_000);
+            ImmutableResourceSet b = i == 0 ? universal().difference(a) : randomDenseSet(30_000);
+
+            assertEquals(a.union(b), a.parallelUnion(b));
+            assertEquals(a.intersection(b), a.parallelIntersection(b));
+            assertEquals(a.difference(b), a.parallelDifference(b));
+            assertEquals(b.difference(a), b.parallelDifference(a));
+            assertEquals(a, a.parallelUnion(empty()));
+            assertEquals(empty(), a.parallelIntersection(empty()));
+            assertEquals(empty(), a.parallelDifference(universal()));
+        }
+
+        ImmutableResourceSet small = ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8");
+        assertEquals(ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 2001:db8::/32"), small.parallelUnion(ImmutableResourceSet.parse("2001:db8::/32")));
+    }
+
+    /*
+     * Many small ranges in a narrow part of each type's space, so that ranges of different sets often overlap.
+     */
+    private ImmutableResourceSet randomDenseSet(int size) {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        for (int i = 0; i < size; ++i) {
+            IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+            BigInteger start = BigInteger.valueOf(random.nextInt(1 << 22));
+            BigInteger end = start.add(BigInteger.valueOf(random.nextInt(50)));
+            builder.add(IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end)));
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void should_count_addresses_without_materializing() {
+        ImmutableResourceSet a = ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 2001:db8::/32");
+        ImmutableResourceSet b = ImmutableResourceSet.parse("AS6-AS20, 10.0.0.0/16, 11.0.0.0/8, 2001:db8::/48");
+
+        BigInteger ipv6Size = BigInteger.ONE.shiftLeft(96);
+        assertEquals(BigInteger.valueOf(5 + (1 << 16)).add(BigInteger.ONE.shiftLeft(80)), a.intersectionAddressCount(b));
+        assertEquals(BigInteger.valueOf(20 + (2 << 24)).add(ipv6Size), a.unionAddressCount(b));
+        assertEquals(BigInteger.valueOf(5 + (1 << 24) - (1 << 16)).add(ipv6Size).subtract(BigInteger.ONE.shiftLeft(80)), a.differenceAddressCount(b));
+
+        BigInteger universalSize = BigInteger.ONE.shiftLeft(33).add(BigInteger.ONE.shiftLeft(128));
+        assertEquals(universalSize, universal().unionAddressCount(universal()));
+        assertEquals(universalSize, universal().intersectionAddressCount(universal()));
+        assertEquals(BigInteger.ZERO, universal().differenceAddressCount(universal()));
+        assertEquals(BigInteger.valueOf(3), ImmutableResourceSet.parse("::ffff:ffff:ffff:ffff-0:0:0:1::1").differenceAddressCount(empty()));
+        assertEquals(BigInteger.ONE.shiftLeft(64).add(BigInteger.ONE.shiftLeft(127)), ImmutableResourceSet.parse("::/64, 8000::/1").unionAddressCount(empty()));
+    }
+
+    @Test
+    public void should_count_addresses_of_random_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet a = randomSet(10);
+            ImmutableResourceSet b = randomSet(10);
+
+            assertEquals(addressCount(a.intersection(b)), a.intersectionAddressCount(b));
+            assertEquals(addressCount(a.union(b)), a.unionAddressCount(b));
+            assertEquals(addressCount(a.difference(b)), a.differenceAddressCount(b));
+        }
+    }
+
+    private static BigInteger addressCount(ImmutableResourceSet resources) {
+        BigInteger result = BigInteger.ZERO;
+        for (IpResource resource : resources) {
+            result = result.add(resource.getEnd().getValue().subtract(resource.getStart().getValue())).add(BigInteger.ONE);
+        }
+        return result;
+    }
+
+    private static String prefixes(String resources, int maximumIpv4PrefixLength, int maximumIpv6PrefixLength) {
+        return ImmutableResourceSet.parse(resources).prefixes(maximumIpv4PrefixLength, maximumIpv6PrefixLength)
+            .map(Objects::toString)
+            .collect(Collectors.joining(", "));
+    }
+
     private ImmutableResourceSet randomSet(int size) {
         return Stream.generate(this::randomResourceRange)
             .limit(random.nextInt(size + 1))
@@ -0,0 +1,125 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IpPrefixTrieTest {
+
+    private static final int RANDOM_SIZE = 50;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_to_and_from_resource_sets() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("10.0.0.0-10.0.2.255, 10.0.3.0/24, 192.168.0.1, ::/8, 2001:db8::/32, ffff::-ffff::2");
+        IpPrefixTrie trie = IpPrefixTrie.of(resources);
+
+        assertEquals(resources, trie.toImmutableResourceSet());
+        assertEquals("10.0.0.0/22, 192.168.0.1/32, ::/8, 2001:db8::/32, ffff::/127, ffff::2/128", trie.toString());
+        assertTrue(IpPrefixTrie.of(ImmutableResourceSet.empty()).isEmpty());
+        assertSame(IpPrefixTrie.empty(), IpPrefixTrie.of(ImmutableResourceSet.empty()));
+    }
+
+    @Test
+    public void should_not_support_asns() {
+        assertThrows(IllegalArgumentException.class, () -> IpPrefixTrie.of(ImmutableResourceSet.parse("AS1")));
+        assertFalse(IpPrefixTrie.of(ImmutableResourceSet.universal().difference(ImmutableResourceSet.parse("AS0-AS4294967295"))).contains(IpResource.parse("AS1")));
+    }
+
+    @Test
+    public void should_merge_sibling_prefixes() {
+        IpPrefixTrie trie = IpPrefixTrie.of(ImmutableResourceSet.parse("10.0.0.0/25, 10.0.1.0/24"))
+            .union(IpPrefixTrie.of(ImmutableResourceSet.parse("10.0.0.128/25")));
+
+        assertEquals("10.0.0.0/23", trie.toString());
+        assertEquals(IpPrefixTrie.of(ImmutableResourceSet.parse("10.0.0.0/23")), trie);
+        assertEquals(IpPrefixTrie.of(ImmutableResourceSet.parse("10.0.0.0/23")).hashCode(), trie.hashCode());
+    }
+
+    @Test
+    public void should_contain_addresses_and_ranges() {
+        IpPrefixTrie trie = IpPrefixTrie.of(ImmutableResourceSet.parse("0.0.0.0/0, 2001:db8::/32, 2001:db9::1"));
+
+        assertTrue(trie.contains(IpAddress.parse("255.255.255.255")));
+        assertTrue(trie.contains(IpAddress.parse("2001:db8::1")));
+        assertTrue(trie.contains(IpAddress.parse("2001:db9::1")));
+        assertFalse(trie.contains(IpAddress.parse("2001:db9::2")));
+        assertFalse(trie.contains(IpAddress.parse("::")));
+        assertTrue(trie.contains(IpResource.parse("2001:db8::/33")));
+        assertTrue(trie.contains(IpResource.parse("2001:db8::5-2001:db8::1:3")));
+        assertFalse(trie.contains(IpResource.parse("2001:db8::/31")));
+        assertFalse(trie.contains(IpResource.parse("2001:db9::-2001:db9::1")));
+        assertTrue(trie.contains(IpResource.parse("2001:db9::1-2001:db9::1")));
+    }
+
+    @Test
+    public void should_match_resource_set_operations() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet a = randomSet(i);
+            ImmutableResourceSet b = randomSet(i);
+            IpPrefixTrie trieA = IpPrefixTrie.of(a);
+            IpPrefixTrie trieB = IpPrefixTrie.of(b);
+
+            assertEquals(a, trieA.toImmutableResourceSet());
+            assertEquals(a.union(b), trieA.union(trieB).toImmutableResourceSet());
+            assertEquals(a.intersection(b), trieA.intersection(trieB).toImmutableResourceSet());
+            assertEquals(a.difference(b), trieA.difference(trieB).toImmutableResourceSet());
+            assertEquals(IpPrefixTrie.of(a.union(b)), trieA.union(trieB));
+            assertEquals(IpPrefixTrie.of(a.intersection(b)), trieA.intersection(trieB));
+            assertEquals(IpPrefixTrie.of(a.difference(b)), trieA.difference(trieB));
+
+            for (IpResource resource : b) {
+                assertEquals(a.contains(resource), trieA.contains(resource));
+                assertEquals(a.contains(resource.getStart()), trieA.contains(resource.getStart()));
+                assertEquals(a.contains(resource.getEnd()), trieA.contains(resource.getEnd()));
+            }
+        }
+    }
+
+    private ImmutableResourceSet randomSet(int size) {
+        List<IpResource> resources = new ArrayList<>();
+        for (int i = random.nextInt(size + 1); i > 0; --i) {
+            IpResourceType type = random.nextBoolean() ? IpResourceType.IPv4 : IpResourceType.IPv6;
+            BigInteger start = new BigInteger(type.getBitSize(), random);
+            BigInteger length = new BigInteger(random.nextInt(type.getBitSize() / 4), random);
+            BigInteger end = start.add(length).min(type.getMaximum().getValue());
+            resources.add(IpResourceRange.assemble(start, end, type));
+        }
+        return ImmutableResourceSet.of(resources);
+    }
+}
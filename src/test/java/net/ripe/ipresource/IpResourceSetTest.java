@@ -32,11 +32,15 @@ package net.ripe.ipresource;
 import static net.ripe.ipresource.IpResource.*;
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.stream.Collectors;
 import org.junit.Test;
 
 public class IpResourceSetTest {
@@ -50,6 +54,64 @@ public class IpResourceSetTest {
         assertEquals("0.0.0.0/0", resources.toString());
     }
 
+    @Test
+    public void shouldStreamPrefixes() {
+        IpResourceSet resources = IpResourceSet.parse("AS1, 10.0.0.1-10.0.0.8, 2001:db8::/32");
+        assertEquals(Arrays.asList(parse("10.0.0.1/32"), parse("10.0.0.2/31"), parse("10.0.0.4/30"), parse("10.0.0.8/32"), parse("2001:db8::/32")),
+            resources.prefixes().collect(Collectors.toList()));
+        assertEquals(Arrays.asList(parse("10.0.0.0/24"), parse("2001:db8::/32")),
+            resources.prefixes(24, 48).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shouldParseFromReader() throws IOException {
+        assertEquals(IpResourceSet.parse("AS1, 10.0.0.0/8, ::1"), IpResourceSet.parse(new StringReader("AS1\n10.0.0.0/8 ::1")));
+    }
+
+    @Test
+    public void shouldFreezeWithoutLeakingLaterMutations() {
+        IpResourceSet resources = IpResourceSet.parse("AS1, 10.0.0.0/8");
+        ImmutableResourceSet frozen = resources.freeze();
+
+        resources.add(parse("11.0.0.0/8"));
+        ImmutableResourceSet secondFrozen = ImmutableResourceSet.of(resources);
+        resources.remove(parse("AS1"));
+        resources.retainAll(IpResourceSet.parse("10.0.0.0/7"));
+
+        assertEquals(ImmutableResourceSet.parse("AS1, 10.0.0.0/8"), frozen);
+        assertEquals(ImmutableResourceSet.parse("AS1, 10.0.0.0/7"), secondFrozen);
+        assertEquals(IpResourceSet.parse("10.0.0.0/7"), resources);
+        assertSame(ImmutableResourceSet.empty(), new IpResourceSet().freeze());
+    }
+
+    @Test
+    public void shouldRemoveThroughIteratorWithoutChangingFrozenSet() {
+        IpResourceSet resources = IpResourceSet.parse("AS1, 10.0.0.0/8, ::1");
+        ImmutableResourceSet frozen = resources.freeze();
+
+        Iterator<IpResource> iterator = resources.iterator();
+        iterator.next();
+        iterator.remove();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+
+        assertEquals(IpResourceSet.parse("10.0.0.0/8"), resources);
+        assertEquals(ImmutableResourceSet.parse("AS1, 10.0.0.0/8, ::1"), frozen);
+        assertThrows(IllegalStateException.class, iterator::remove);
+    }
+
+    @Test
+    public void shouldFindNeighbours() {
+        IpResourceSet resources = IpResourceSet.parse("10.0.0.0/8, 12.0.0.0/8");
+
+        assertEquals(parse("10.0.0.0/8"), resources.findContaining(parse("10.0.0.1")));
+        assertEquals(parse("10.0.0.0/8"), resources.floor(parse("11.0.0.0")));
+        assertEquals(parse("10.0.0.0/8"), resources.lower(parse("11.0.0.0")));
+        assertEquals(parse("12.0.0.0/8"), resources.ceiling(parse("11.0.0.0")));
+        assertEquals(parse("12.0.0.0/8"), resources.higher(parse("11.0.0.0")));
+    }
+
     @Test
     public void shouldNormalizeAccordingToRfc3779() {
         IpResourceSet resources = new IpResourceSet();
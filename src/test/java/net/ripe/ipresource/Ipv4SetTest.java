@@ -0,0 +1,123 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class Ipv4SetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_from_and_to_resource_set() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1, 10.0.0.0/9, 10.128.0.0/9, 192.168.0.1, ::/0");
+
+        Ipv4Set subject = resources.getIpv4Set();
+
+        assertEquals("10.0.0.0/8, 192.168.0.1", subject.toString());
+        assertEquals(IpResource.parse("10.0.0.0/8"), subject.getRange(0));
+        assertEquals((1L << 24) + 1, subject.getAddressCount());
+        assertEquals(subject, Ipv4Set.of(subject.toImmutableResourceSet()));
+        assertEquals(Ipv4Set.universal(), ImmutableResourceSet.universal().getIpv4Set());
+        assertEquals(1L << 32, Ipv4Set.universal().getAddressCount());
+        assertThrows(IllegalArgumentException.class, () -> Ipv4Set.of(resources));
+    }
+
+    @Test
+    public void should_query_unsigned_addresses() {
+        Ipv4Set subject = ImmutableResourceSet.parse("10.0.0.0/8, 192.168.0.0/16, 255.255.255.255").getIpv4Set();
+
+        assertTrue(subject.contains(address("10.1.2.3")));
+        assertTrue(subject.contains(address("192.168.255.255")));
+        assertTrue(subject.contains(-1));
+        assertFalse(subject.contains(address("11.0.0.0")));
+        assertFalse(subject.contains(address("255.255.255.254")));
+        assertTrue(subject.contains(address("192.168.1.0"), address("192.168.1.255")));
+        assertFalse(subject.contains(address("192.167.255.255"), address("192.168.1.255")));
+        assertTrue(subject.intersects(address("192.167.255.255"), address("192.168.1.255")));
+        assertFalse(subject.intersects(address("11.0.0.0"), address("192.167.255.255")));
+        assertThrows(IllegalArgumentException.class, () -> subject.contains(-1, 0));
+    }
+
+    @Test
+    public void should_match_resource_set_algebra() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet left = randomSet();
+            ImmutableResourceSet right = randomSet();
+            Ipv4Set leftIpv4 = left.getIpv4Set();
+            Ipv4Set rightIpv4 = right.getIpv4Set();
+
+            assertEquals(left.union(right).getIpv4Set(), leftIpv4.union(rightIpv4));
+            assertEquals(left.intersection(right).getIpv4Set(), leftIpv4.intersection(rightIpv4));
+            assertEquals(left.difference(right).getIpv4Set(), leftIpv4.difference(rightIpv4));
+            assertEquals(left.complement().getIpv4Set(), leftIpv4.complement());
+            assertEquals(left.contains(right), leftIpv4.contains(rightIpv4));
+            assertEquals(left.intersects(right), leftIpv4.intersects(rightIpv4));
+        }
+    }
+
+    @Test
+    public void should_look_up_addresses_like_resource_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = randomSet();
+            Ipv4Set subject = resources.getIpv4Set();
+            for (int j = 0; j < 100; ++j) {
+                int start = 0xffff_ff00 + random.nextInt(250);
+                int end = start + random.nextInt(5);
+                IpRange range = IpRange.range(new Ipv4Address(Integer.toUnsignedLong(start)), new Ipv4Address(Integer.toUnsignedLong(end)));
+                assertEquals(resources.contains(range.getStart()), subject.contains(start));
+                assertEquals(resources.intersects(range), subject.intersects(start, end));
+            }
+        }
+    }
+
+    private static int address(String s) {
+        return (int) Ipv4Address.parse(s).longValue();
+    }
+
+    private ImmutableResourceSet randomSet() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        int size = random.nextInt(10);
+        for (int i = 0; i < size; ++i) {
+            long start = 0xffff_ff00L + random.nextInt(200);
+            builder.add(IpRange.range(new Ipv4Address(start), new Ipv4Address(Math.min(0xffff_ffffL, start + random.nextInt(20)))));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class Ipv6SetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_from_and_to_resource_set() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1, 10.0.0.0/8, 2001:db8::/33, 2001:db8:8000::/33, ::1");
+
+        Ipv6Set subject = resources.getIpv6Set();
+
+        assertEquals("::1, 2001:db8::/32", subject.toString());
+        assertEquals(IpResource.parse("2001:db8::/32"), subject.getRange(1));
+        assertEquals(BigInteger.ONE.shiftLeft(96).add(BigInteger.ONE), subject.getAddressCount());
+        assertEquals(subject, Ipv6Set.of(subject.toImmutableResourceSet()));
+        assertEquals(BigInteger.ONE.shiftLeft(128), Ipv6Set.universal().getAddressCount());
+        assertThrows(IllegalArgumentException.class, () -> Ipv6Set.of(resources));
+    }
+
+    @Test
+    public void should_query_address_bits() {
+        Ipv6Set subject = ImmutableResourceSet.parse("::1, 2001:db8::/32, ffff::/16").getIpv6Set();
+
+        assertTrue(subject.contains(0, 1));
+        assertFalse(subject.contains(0, 2));
+        assertTrue(subject.contains(0x2001_0db8_ffff_ffffL, -1L));
+        assertFalse(subject.contains(0x2001_0db9_0000_0000L, 0));
+        assertTrue(subject.contains(-1L, -1L));
+        assertTrue(subject.contains(0x2001_0db8_0000_0000L, 0, 0x2001_0db8_0001_0000L, 0));
+        assertFalse(subject.contains(0x2001_0db8_0000_0000L, 0, 0x2001_0db9_0000_0000L, 0));
+        assertTrue(subject.intersects(0, 2, 0x2001_0db8_0000_0000L, 0));
+        assertFalse(subject.intersects(0, 2, 0x2001_0db7_ffff_ffffL, -1L));
+        assertThrows(IllegalArgumentException.class, () -> subject.contains(1, 0, 0, 0));
+    }
+
+    @Test
+    public void should_merge_ranges_across_low_bits_boundary() {
+        Ipv6Set left = ImmutableResourceSet.parse("::ffff:ffff:ffff:ffff").getIpv6Set();
+        Ipv6Set right = ImmutableResourceSet.parse("0:0:0:1::").getIpv6Set();
+
+        assertEquals(1, left.union(right).getRangeCount());
+        assertEquals("::ffff:ffff:ffff:ffff-0:0:0:1::", left.union(right).toString());
+        assertEquals(left, left.union(right).difference(right));
+    }
+
+    @Test
+    public void should_match_resource_set_algebra() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet left = randomSet();
+            ImmutableResourceSet right = randomSet();
+            Ipv6Set leftIpv6 = left.getIpv6Set();
+            Ipv6Set rightIpv6 = right.getIpv6Set();
+
+            assertEquals(left.union(right).getIpv6Set(), leftIpv6.union(rightIpv6));
+            assertEquals(left.intersection(right).getIpv6Set(), leftIpv6.intersection(rightIpv6));
+            assertEquals(left.difference(right).getIpv6Set(), leftIpv6.difference(rightIpv6));
+            assertEquals(left.complement().getIpv6Set(), leftIpv6.complement());
+            assertEquals(left.contains(right), leftIpv6.contains(rightIpv6));
+            assertEquals(left.intersects(right), leftIpv6.intersects(rightIpv6));
+            assertEquals(left.intersectionAddressCount(right.complement()), leftIpv6.difference(rightIpv6).getAddressCount());
+        }
+    }
+
+    private ImmutableResourceSet randomSet() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        int size = random.nextInt(10);
+        for (int i = 0; i < size; ++i) {
+            // Ranges around the boundary between the high and low 64 bits
+            BigInteger start = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.valueOf(100)).add(BigInteger.valueOf(random.nextInt(200)));
+            builder.add(IpRange.range(new Ipv6Address(start), new Ipv6Address(start.add(BigInteger.valueOf(random.nextInt(20))))));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class LazyResourceSetTest {
+
+    private static final ImmutableResourceSet RESOURCES = ImmutableResourceSet.parse("AS1-AS10, AS3333, 10.0.0.0/8, 192.168.0.0/16, 2001:db8::/32, ::1");
+
+    @Test
+    public void should_parse_text_on_first_access() {
+        LazyResourceSet subject = LazyResourceSet.fromText(RESOURCES.toString());
+
+        assertFalse(subject.isMaterialized());
+        assertTrue(subject.contains(parse("10.1.0.0/16")));
+        assertTrue(subject.isMaterialized());
+        assertFalse(subject.intersects(parse("11.0.0.0/8")));
+        assertEquals(RESOURCES, subject.get());
+        assertSame(subject.get(), subject.get());
+    }
+
+    @Test
+    public void should_round_trip_encoded_form() {
+        byte[] encoded = LazyResourceSet.encode(RESOURCES);
+
+        LazyResourceSet subject = LazyResourceSet.fromEncoded(encoded);
+
+        assertArrayEquals(encoded, subject.getEncoded());
+        assertFalse(subject.isMaterialized());
+        assertEquals(RESOURCES, subject.get());
+        assertEquals(RESOURCES.toString(), subject.toString());
+        assertEquals(ImmutableResourceSet.empty(), LazyResourceSet.fromEncoded(LazyResourceSet.encode(ImmutableResourceSet.empty())).get());
+    }
+
+    @Test
+    public void should_compare_encoded_sets_without_parsing() {
+        LazyResourceSet a = LazyResourceSet.fromEncoded(LazyResourceSet.encode(RESOURCES));
+        LazyResourceSet b = LazyResourceSet.fromEncoded(LazyResourceSet.encode(RESOURCES));
+        LazyResourceSet c = LazyResourceSet.fromEncoded(LazyResourceSet.encode(RESOURCES.remove(parse("AS3333"))));
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+        assertFalse(a.isMaterialized());
+        assertFalse(b.isMaterialized());
+        assertFalse(c.isMaterialized());
+    }
+
+    @Test
+    public void should_compare_equal_regardless_of_source() {
+        LazyResourceSet text = LazyResourceSet.fromText("10.0.0.0/9, 10.128.0.0/9, AS3333, AS1-AS10, ::1, 192.168.0.0/16, 2001:db8::/32");
+        LazyResourceSet encoded = LazyResourceSet.fromEncoded(LazyResourceSet.encode(RESOURCES));
+        LazyResourceSet materialized = LazyResourceSet.of(RESOURCES);
+
+        assertEquals(text, encoded);
+        assertEquals(encoded, materialized);
+        assertEquals(text.hashCode(), materialized.hashCode());
+    }
+
+    @Test
+    public void should_reject_invalid_input_on_access() {
+        LazyResourceSet text = LazyResourceSet.fromText("10.0.0.0/8, foo");
+        byte[] encoded = LazyResourceSet.encode(RESOURCES);
+        LazyResourceSet truncated = LazyResourceSet.fromEncoded(Arrays.copyOf(encoded, encoded.length - 1));
+        LazyResourceSet trailing = LazyResourceSet.fromEncoded(Arrays.copyOf(encoded, encoded.length + 1));
+
+        assertThrows(IllegalArgumentException.class, text::get);
+        assertThrows(IllegalArgumentException.class, truncated::get);
+        assertThrows(IllegalArgumentException.class, trailing::get);
+    }
+
+    @Test
+    public void should_reject_non_canonical_encoding() {
+        byte[] adjacent = LazyResourceSet.encode(ImmutableResourceSet.of(parse("AS1"), parse("AS3")));
+        // Rewrite AS3-AS3 into AS2-AS3, which is adjacent to AS1
+        adjacent[4 + 4 * 2 + 3] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> LazyResourceSet.fromEncoded(adjacent).get());
+    }
+}
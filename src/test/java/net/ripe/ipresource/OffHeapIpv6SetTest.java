@@ -0,0 +1,164 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapIpv6SetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_from_and_to_resources() {
+        try (OffHeapIpv6Set subject = OffHeapIpv6Set.of(ImmutableResourceSet.parse("2001:db8::/33, 2001:db8:8000::/33, ::1"))) {
+            assertEquals(2, subject.getRangeCount());
+            assertEquals(parse("::1"), subject.getRange(0));
+            assertEquals(parse("2001:db8::/32"), subject.getRange(1));
+            assertEquals("::1, 2001:db8::/32", subject.toString());
+            assertEquals(ImmutableResourceSet.parse("::1, 2001:db8::/32"), subject.toImmutableResourceSet());
+            assertEquals(ImmutableResourceSet.parse("::1, 2001:db8::/32").getIpv6Set(), subject.toIpv6Set());
+        }
+        try (OffHeapIpv6Set subject = OffHeapIpv6Set.of(Arrays.asList(parse("2001:db8:8000::/33"), parse("::1"), parse("2001:db8::/33")))) {
+            assertEquals(ImmutableResourceSet.parse("::1, 2001:db8::/32"), subject.toImmutableResourceSet());
+        }
+        assertThrows(IllegalArgumentException.class, () -> OffHeapIpv6Set.of(ImmutableResourceSet.parse("10.0.0.0/8")));
+        assertThrows(IllegalArgumentException.class, () -> OffHeapIpv6Set.of(Arrays.asList(parse("::1"), parse("AS1"))));
+    }
+
+    @Test
+    public void should_look_up_resources() {
+        try (OffHeapIpv6Set subject = OffHeapIpv6Set.of(ImmutableResourceSet.parse("::1, 2001:db8::/32, ffff::/16"))) {
+            assertTrue(subject.contains(0, 1));
+            assertFalse(subject.contains(0, 2));
+            assertTrue(subject.contains(-1L, -1L));
+            assertTrue(subject.contains(parse("2001:db8:1::/48")));
+            assertFalse(subject.contains(parse("2001:db8::/31")));
+            assertFalse(subject.contains(parse("10.0.0.0/8")));
+            assertTrue(subject.intersects(parse("2001:db8::/31")));
+            assertFalse(subject.intersects(parse("2001:db9::/32")));
+            assertFalse(subject.intersects(parse("AS1")));
+        }
+    }
+
+    @Test
+    public void should_merge_ranges_in_ascending_order() {
+        OffHeapIpv6Set.Builder builder = new OffHeapIpv6Set.Builder()
+            .add(0, 0, 0, 10)
+            .add(0, 5, 0, 20)
+            .add(0, 21, 0, -1L)
+            .add(1, 0, 1, 0);
+
+        OffHeapIpv6Set subject = builder.build();
+
+        assertEquals(1, subject.getRangeCount());
+        assertEquals(IpRange.parse("::-0:0:0:1::"), subject.getRange(0));
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapIpv6Set.Builder().add(0, 5, 0, 6).add(0, 4, 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapIpv6Set.Builder().add(0, 5, 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapIpv6Set.Builder().add(parse("AS1")));
+    }
+
+    @Test
+    public void should_grow_buffers() {
+        OffHeapIpv6Set.Builder builder = new OffHeapIpv6Set.Builder();
+        for (int i = 0; i < 5000; ++i) {
+            builder.add(i, 0, i, 1);
+        }
+
+        try (OffHeapIpv6Set subject = builder.build()) {
+            assertEquals(5000, subject.getRangeCount());
+            assertTrue(subject.contains(4999, 1));
+            assertFalse(subject.contains(4999, 2));
+            assertEquals(Ipv6Address.fromBits(1234, 0).upTo(Ipv6Address.fromBits(1234, 1)), subject.getRange(1234));
+        }
+    }
+
+    @Test
+    public void should_fail_after_close() {
+        OffHeapIpv6Set subject = OffHeapIpv6Set.of(ImmutableResourceSet.parse("::1"));
+
+        subject.close();
+        subject.close();
+
+        assertThrows(IllegalStateException.class, () -> subject.contains(0, 1));
+        assertThrows(IllegalStateException.class, () -> subject.contains(parse("10.0.0.0/8")));
+        assertThrows(IllegalStateException.class, subject::iterator);
+        assertThrows(IllegalStateException.class, () -> subject.union(subject));
+    }
+
+    @Test
+    public void should_match_resource_set_algebra_across_chunks() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet left = randomSet();
+            ImmutableResourceSet right = randomSet();
+            try (OffHeapIpv6Set offHeapLeft = build(left); OffHeapIpv6Set offHeapRight = build(right)) {
+                assertEquals(left.union(right), offHeapLeft.union(offHeapRight).toImmutableResourceSet());
+                assertEquals(left.intersection(right), offHeapLeft.intersection(offHeapRight).toImmutableResourceSet());
+                assertEquals(left.difference(right), offHeapLeft.difference(offHeapRight).toImmutableResourceSet());
+                assertEquals(right.difference(left), offHeapRight.difference(offHeapLeft).toImmutableResourceSet());
+                for (IpResource resource : right) {
+                    assertEquals(left.contains(resource), offHeapLeft.contains(resource));
+                    assertEquals(left.intersects(resource), offHeapLeft.intersects(resource));
+                }
+            }
+        }
+    }
+
+    private static OffHeapIpv6Set build(ImmutableResourceSet resources) {
+        OffHeapIpv6Set.Builder builder = new OffHeapIpv6Set.Builder(3);
+        for (IpResource resource : resources) {
+            builder.add(resource);
+        }
+        return builder.build();
+    }
+
+    private ImmutableResourceSet randomSet() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        int size = random.nextInt(20);
+        for (int i = 0; i < size; ++i) {
+            // Ranges around the boundary between the high and low 64 bits
+            BigInteger start = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.valueOf(100)).add(BigInteger.valueOf(random.nextInt(200)));
+            builder.add(IpRange.range(new Ipv6Address(start), new Ipv6Address(start.add(BigInteger.valueOf(random.nextInt(20))))));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResourceBitmapTest {
+
+    private static final int RANDOM_SIZE = 50;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_convert_to_and_from_resource_sets() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("0.0.0.0, 10.0.0.0/8, 11.0.0.1, 11.0.0.3, 192.168.255.255-192.169.0.1, 255.255.255.255");
+        ResourceBitmap bitmap = ResourceBitmap.of(IpResourceType.IPv4, resources);
+
+        assertEquals(resources, bitmap.toImmutableResourceSet());
+        assertEquals(resources.toString(), bitmap.toString());
+        assertEquals(1 + (1 << 24) + 2 + 3 + 1, bitmap.cardinality());
+        assertTrue(ResourceBitmap.of(IpResourceType.ASN, ImmutableResourceSet.empty()).isEmpty());
+        assertEquals(ResourceBitmap.empty(IpResourceType.ASN), ResourceBitmap.of(IpResourceType.ASN, ImmutableResourceSet.empty()));
+    }
+
+    @Test
+    public void should_sort_and_merge_unsorted_resources() {
+        ResourceBitmap bitmap = ResourceBitmap.of(IpResourceType.IPv4, Arrays.asList(
+            IpResource.parse("255.255.255.255"),
+            IpResource.parse("192.169.0.0-192.169.0.1"),
+            IpResource.parse("10.0.0.0/8"),
+            IpResource.parse("192.168.255.255"),
+            IpResource.parse("10.1.0.0/16"),
+            IpResource.parse("9.255.255.0-10.0.0.5")));
+
+        assertEquals(ImmutableResourceSet.parse("9.255.255.0-10.255.255.255, 192.168.255.255-192.169.0.1, 255.255.255.255"), bitmap.toImmutableResourceSet());
+        assertThrows(IllegalArgumentException.class, () -> ResourceBitmap.of(IpResourceType.ASN, Arrays.asList(IpResource.parse("AS1"), IpResource.parse("10/8"))));
+    }
+
+    @Test
+    public void should_only_support_32_bit_resources() {
+        assertThrows(IllegalArgumentException.class, () -> ResourceBitmap.empty(IpResourceType.IPv6));
+        assertThrows(IllegalArgumentException.class, () -> ResourceBitmap.of(IpResourceType.ASN, ImmutableResourceSet.parse("10/8")));
+        assertThrows(IllegalArgumentException.class, () -> ResourceBitmap.empty(IpResourceType.ASN).union(ResourceBitmap.empty(IpResourceType.IPv4)));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceBitmap.Builder(IpResourceType.IPv4).add(1L << 32));
+    }
+
+    @Test
+    public void should_contain_values_and_ranges() {
+        ResourceBitmap bitmap = ResourceBitmap.of(IpResourceType.ASN, ImmutableResourceSet.parse("AS1, AS3, AS65535-AS65537, AS4294967295"));
+
+        assertTrue(bitmap.contains(1));
+        assertFalse(bitmap.contains(2));
+        assertTrue(bitmap.contains(65536));
+        assertTrue(bitmap.contains(4294967295L));
+        assertFalse(bitmap.contains(-1));
+        assertTrue(bitmap.contains(IpResource.parse("AS65535-AS65537")));
+        assertFalse(bitmap.contains(IpResource.parse("AS65534-AS65537")));
+        assertFalse(bitmap.contains(IpResource.parse("AS1-AS3")));
+        assertFalse(bitmap.contains(IpResource.parse("0.0.0.1")));
+    }
+
+    @Test
+    public void should_store_scattered_values_compactly() {
+        ResourceBitmap.Builder builder = new ResourceBitmap.Builder(IpResourceType.IPv4);
+        for (long value = 0; value < 1L << 24; value += 3) {
+            builder.add(value);
+        }
+        ResourceBitmap bitmap = builder.build();
+
+        assertEquals((1 << 24) / 3 + 1, bitmap.cardinality());
+        assertTrue(bitmap.sizeInBytes() <= (1 << 24) / 8 + 1024);
+        assertTrue(bitmap.contains(3 * 12345));
+        assertFalse(bitmap.contains(3 * 12345 + 1));
+    }
+
+    @Test
+    public void builder_should_match_resource_sets() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet.Builder expected = new ImmutableResourceSet.Builder();
+            ResourceBitmap.Builder builder = new ResourceBitmap.Builder(IpResourceType.IPv4);
+            for (int j = random.nextInt(5000); j > 0; --j) {
+                long value = random.nextInt(1 << 20);
+                IpResource resource = random.nextInt(10) == 0
+                    ? new Ipv4Address(value).upTo(new Ipv4Address(value + random.nextInt(1 << 12)))
+                    : new Ipv4Address(value);
+                expected.add(resource);
+                builder.add(resource);
+            }
+            ImmutableResourceSet resources = expected.build();
+            ResourceBitmap bitmap = builder.build();
+
+            assertEquals(resources, bitmap.toImmutableResourceSet());
+            assertEquals(ResourceBitmap.of(IpResourceType.IPv4, resources), bitmap);
+        }
+    }
+
+    @Test
+    public void should_match_resource_set_operations() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet a = randomSet(i);
+            ImmutableResourceSet b = randomSet(i);
+            ResourceBitmap bitmapA = ResourceBitmap.of(IpResourceType.ASN, a);
+            ResourceBitmap bitmapB = ResourceBitmap.of(IpResourceType.ASN, b);
+
+            assertEquals(a, bitmapA.toImmutableResourceSet());
+            assertEquals(a.union(b), bitmapA.union(bitmapB).toImmutableResourceSet());
+            assertEquals(a.intersection(b), bitmapA.intersection(bitmapB).toImmutableResourceSet());
+            assertEquals(a.difference(b), bitmapA.difference(bitmapB).toImmutableResourceSet());
+            assertEquals(ResourceBitmap.of(IpResourceType.ASN, a.union(b)), bitmapA.union(bitmapB));
+            assertEquals(ResourceBitmap.of(IpResourceType.ASN, a.intersection(b)), bitmapA.intersection(bitmapB));
+            assertEquals(ResourceBitmap.of(IpResourceType.ASN, a.difference(b)), bitmapA.difference(bitmapB));
+
+            for (IpResource resource : b) {
+                assertEquals(a.contains(resource), bitmapA.contains(resource));
+                assertEquals(a.contains(resource.getStart()), bitmapA.contains(((Asn) resource.getStart()).longValue()));
+            }
+        }
+    }
+
+    private ImmutableResourceSet randomSet(int size) {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        for (int i = random.nextInt(size + 1); i > 0; --i) {
+            long start = random.nextInt(1 << 20);
+            long length = random.nextBoolean() ? random.nextInt(4) : random.nextInt(1 << random.nextInt(18));
+            builder.add(new Asn(start).upTo(new Asn(start + length)));
+        }
+        if (random.nextInt(8) == 0) {
+            long start = random.nextInt(1 << 20);
+            for (long value = start; value < start + 10000; value += 2) {
+                builder.add(new Asn(value));
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourcePrefilterTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_reject_resources_outside_of_covered_blocks() {
+        ResourcePrefilter subject = ResourcePrefilter.of(ImmutableResourceSet.parse("AS65536-AS65540, 10.0.0.0/16, 192.168.1.1, 2001:db8::/32, 2a00::/12"));
+
+        assertTrue(subject.mightIntersect(parse("AS65537")));
+        assertFalse(subject.mightIntersect(parse("AS1")));
+        assertTrue(subject.mightIntersect(parse("10.0.255.255")));
+        assertFalse(subject.mightIntersect(parse("10.1.0.0")));
+        assertTrue(subject.mightIntersect(parse("192.168.1.0/24")));
+        assertFalse(subject.mightIntersect(parse("192.169.0.0/16")));
+        assertTrue(subject.mightIntersect(parse("9.0.0.0-10.0.0.0")));
+        assertTrue(subject.mightIntersect(parse("0.0.0.0/0")));
+        assertTrue(subject.mightIntersect(parse("2001:db8:1::/48")));
+        assertFalse(subject.mightIntersect(parse("2002::/16")));
+        assertTrue(subject.mightIntersect(parse("2a0f:ffff::/32")));
+        assertTrue(subject.mightIntersect(parse("::/0")));
+
+        assertEquals(12, subject.getQueryCount());
+        assertEquals(4, subject.getRejectionCount());
+        assertEquals(1.0 / 3, subject.getRejectionRate(), 1e-9);
+    }
+
+    @Test
+    public void should_accept_added_resources() {
+        ResourcePrefilter subject = ResourcePrefilter.empty();
+        assertFalse(subject.mightIntersect(parse("0.0.0.0/0")));
+        assertEquals(0.0, ResourcePrefilter.empty().getRejectionRate(), 0.0);
+
+        subject.add(parse("2001:db8::1"));
+        assertTrue(subject.mightIntersect(parse("2001:db8::/64")));
+        assertFalse(subject.mightIntersect(parse("0.0.0.0/0")));
+    }
+
+    @Test
+    public void should_never_reject_intersecting_resources() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = Stream.generate(this::randomResourceRange).limit(random.nextInt(20)).collect(ImmutableResourceSet.collector());
+            ResourcePrefilter subject = ResourcePrefilter.of(resources);
+            for (int j = 0; j < 100; ++j) {
+                IpResourceRange query = randomResourceRange();
+                if (resources.intersects(query)) {
+                    assertTrue(query + " intersects " + resources, subject.mightIntersect(query));
+                }
+            }
+        }
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        int shift = type == IpResourceType.IPv6 ? 96 : 0;
+        BigInteger start = BigInteger.valueOf(random.nextInt(1 << 24)).shiftLeft(shift);
+        BigInteger end = start.add(BigInteger.valueOf(random.nextInt(1 << 20)).shiftLeft(shift));
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
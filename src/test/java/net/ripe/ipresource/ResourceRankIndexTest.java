@@ -0,0 +1,124 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceRankIndexTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_rank_and_select_in_set_order() {
+        ResourceRankIndex subject = ImmutableResourceSet.parse("AS10-AS19, 10.0.0.0/30, 10.0.1.0, ::/126").rankIndex();
+
+        assertEquals(BigInteger.valueOf(19), subject.size());
+        assertEquals(UniqueIpResource.parse("AS10"), subject.select(0));
+        assertEquals(UniqueIpResource.parse("AS19"), subject.select(9));
+        assertEquals(UniqueIpResource.parse("10.0.0.0"), subject.select(10));
+        assertEquals(UniqueIpResource.parse("10.0.1.0"), subject.select(14));
+        assertEquals(UniqueIpResource.parse("::"), subject.select(15));
+        assertEquals(UniqueIpResource.parse("::3"), subject.select(BigInteger.valueOf(18)));
+
+        assertEquals(BigInteger.ZERO, subject.rank(UniqueIpResource.parse("AS1")));
+        assertEquals(BigInteger.valueOf(5), subject.rank(UniqueIpResource.parse("AS15")));
+        assertEquals(BigInteger.valueOf(10), subject.rank(UniqueIpResource.parse("AS100")));
+        assertEquals(BigInteger.valueOf(14), subject.rank(UniqueIpResource.parse("10.0.0.255")));
+        assertEquals(BigInteger.valueOf(15), subject.rank(UniqueIpResource.parse("255.255.255.255")));
+        assertEquals(BigInteger.valueOf(19), subject.rank(UniqueIpResource.parse("2001:db8::")));
+
+        assertThrows(IllegalArgumentException.class, () -> subject.select(-1));
+        assertThrows(IllegalArgumentException.class, () -> subject.select(19));
+        assertThrows(IllegalArgumentException.class, () -> ImmutableResourceSet.empty().rankIndex().sample(random, 1));
+    }
+
+    @Test
+    public void should_count_beyond_long_range() {
+        ResourceRankIndex subject = ImmutableResourceSet.universal().rankIndex();
+
+        BigInteger nonIpv6 = BigInteger.ONE.shiftLeft(33);
+        assertEquals(nonIpv6.add(BigInteger.ONE.shiftLeft(128)), subject.size());
+        assertEquals(UniqueIpResource.parse("ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"), subject.select(subject.size().subtract(BigInteger.ONE)));
+        assertEquals(nonIpv6.add(BigInteger.ONE), subject.rank(UniqueIpResource.parse("::1")));
+        assertEquals(100, subject.sample(random, 100).count());
+    }
+
+    @Test
+    public void should_sample_from_set() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1, 10.0.0.0/24, 2001:db8::/64");
+        List<UniqueIpResource> sample = resources.rankIndex().sample(random, 1000).collect(Collectors.toList());
+
+        assertEquals(1000, sample.size());
+        assertTrue(sample.stream().allMatch(resources::contains));
+        assertTrue(sample.stream().anyMatch(element -> element.getType() == IpResourceType.IPv6));
+        assertEquals(1, ImmutableResourceSet.of(parse("AS1")).rankIndex().sample(random, 5).distinct().count());
+    }
+
+    @Test
+    public void should_select_the_element_with_its_rank() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = Stream.generate(this::randomResourceRange).limit(1 + random.nextInt(10)).collect(ImmutableResourceSet.collector());
+            ResourceRankIndex subject = resources.rankIndex();
+
+            BigInteger expectedSize = BigInteger.ZERO;
+            for (IpResource resource : resources) {
+                expectedSize = expectedSize.add(resource.getEnd().getValue().subtract(resource.getStart().getValue())).add(BigInteger.ONE);
+            }
+            assertEquals(expectedSize, subject.size());
+
+            for (int j = 0; j < 10; ++j) {
+                BigInteger index = new BigInteger(subject.size().bitLength() + 1, random).mod(subject.size());
+                UniqueIpResource element = subject.select(index);
+                assertTrue(resources.contains(element));
+                assertEquals(index, subject.rank(element));
+            }
+        }
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        BigInteger start = BigInteger.valueOf(random.nextInt(1 << 16));
+        BigInteger end = start.add(BigInteger.valueOf(random.nextInt(1 << 12)));
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class ResourceSetFingerprintTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_follow_specification() {
+        assertEquals("00000000000000000000000000000000", ImmutableResourceSet.empty().fingerprint().toString());
+        assertEquals("ac0452484b6e5f0c058d2602a5256969", ImmutableResourceSet.parse("AS64496-AS64511").fingerprint().toString());
+        assertEquals("9bb7652d2f4423efd15c4fe26d2ee982", ImmutableResourceSet.parse("AS64496-AS64511, 192.0.2.0/24, 2001:db8::/32").fingerprint().toString());
+    }
+
+    @Test
+    public void should_depend_on_content_only() {
+        ImmutableResourceSet a = ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 2001:db8::/32");
+        ImmutableResourceSet b = new ImmutableResourceSet.Builder()
+            .add(parse("2001:db8::/33"))
+            .add(parse("10.128.0.0/9"))
+            .add(parse("AS5-AS10"))
+            .add(parse("10.0.0.0/9"))
+            .add(parse("AS1-AS4"))
+            .add(parse("2001:db8:8000::/33"))
+            .build();
+
+        assertEquals(a.fingerprint(), b.fingerprint());
+        assertSame(a.fingerprint(), a.fingerprint());
+        assertNotEquals(a.fingerprint(), a.remove(parse("AS5")).fingerprint());
+        assertNotEquals(ImmutableResourceSet.parse("AS1").fingerprint(), ImmutableResourceSet.parse("0.0.0.1").fingerprint());
+    }
+
+    @Test
+    public void should_parse_string_form() {
+        ResourceSetFingerprint fingerprint = ImmutableResourceSet.parse("10.0.0.0/8").fingerprint();
+
+        assertEquals(fingerprint, ResourceSetFingerprint.parse(fingerprint.toString()));
+        assertEquals(fingerprint, ResourceSetFingerprint.parse(fingerprint.toString().toUpperCase()));
+        assertEquals(ResourceSetFingerprint.empty(), ResourceSetFingerprint.parse("00000000000000000000000000000000"));
+        assertEquals(-1L, ResourceSetFingerprint.parse("ffffffffffffffff0000000000000001").getHigh());
+        assertEquals(1L, ResourceSetFingerprint.parse("ffffffffffffffff0000000000000001").getLow());
+        assertThrows(IllegalArgumentException.class, () -> ResourceSetFingerprint.parse("0"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSetFingerprint.parse("0000000000000000000000000000000g"));
+        assertThrows(IllegalArgumentException.class, () -> ResourceSetFingerprint.parse(null));
+    }
+
+    @Test
+    public void should_maintain_fingerprint_incrementally() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet a = randomSet();
+            ImmutableResourceSet b = randomSet();
+            a.fingerprint();
+
+            ImmutableResourceSet union = new ImmutableResourceSet.Builder(a).addAll(b).build();
+            ImmutableResourceSet difference = new ImmutableResourceSet.Builder(a).removeAll(b).build();
+
+            assertEquals(ResourceSetFingerprint.of(union), union.fingerprint());
+            assertEquals(ResourceSetFingerprint.of(difference), difference.fingerprint());
+            assertEquals(ResourceSetFingerprint.of(a.complement()), new ImmutableResourceSet.Builder(a.complement()).build().fingerprint());
+        }
+    }
+
+    private ImmutableResourceSet randomSet() {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        int size = random.nextInt(20);
+        for (int i = 0; i < size; ++i) {
+            IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+            BigInteger start = BigInteger.valueOf(random.nextInt(1000));
+            builder.add(IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(start.add(BigInteger.valueOf(random.nextInt(50))))));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceSetMatcherTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_match_private_use_resources() {
+        ResourceSetMatcher subject = ImmutableResourceSet.ALL_PRIVATE_USE_RESOURCES.compile();
+
+        assertTrue(subject.matches((int) Ipv4Address.parse("10.0.0.0").longValue()));
+        assertTrue(subject.matches((int) Ipv4Address.parse("192.168.255.255").longValue()));
+        assertFalse(subject.matches((int) Ipv4Address.parse("9.255.255.255").longValue()));
+        assertFalse(subject.matches((int) Ipv4Address.parse("192.169.0.0").longValue()));
+        assertFalse(subject.matches((int) Ipv4Address.parse("255.255.255.255").longValue()));
+        assertTrue(subject.matches(0xfc00_0000_0000_0000L, 0L));
+        assertTrue(subject.matches(0xfdff_ffff_ffff_ffffL, -1L));
+        assertFalse(subject.matches(0xfe00_0000_0000_0000L, 0L));
+        assertFalse(subject.matches(0x2001_0db8_0000_0000L, 1L));
+        assertTrue(subject.matchesAsn(64512));
+        assertTrue(subject.matchesAsn(4294967294L));
+        assertFalse(subject.matchesAsn(4294967295L));
+        assertFalse(subject.matchesAsn(3333));
+        assertFalse(subject.matchesAsn(-64512));
+        assertFalse(subject.matchesAsn(Long.MIN_VALUE + 64512));
+        assertTrue(subject.matches(UniqueIpResource.parse("172.31.0.1")));
+        assertFalse(subject.matches(UniqueIpResource.parse("::1")));
+    }
+
+    @Test
+    public void should_match_nothing_when_empty() {
+        ResourceSetMatcher subject = ImmutableResourceSet.empty().compile();
+
+        assertFalse(subject.matchesAsn(0));
+        assertFalse(subject.matches(0));
+        assertFalse(subject.matches(0L, 0L));
+    }
+
+    @Test
+    public void should_match_everything_when_universal() {
+        ResourceSetMatcher subject = ImmutableResourceSet.universal().compile();
+
+        assertTrue(subject.matchesAsn(0));
+        assertTrue(subject.matchesAsn(4294967295L));
+        assertTrue(subject.matches(0));
+        assertTrue(subject.matches(-1));
+        assertTrue(subject.matches(0L, 0L));
+        assertTrue(subject.matches(-1L, -1L));
+    }
+
+    @Test
+    public void should_match_like_contains() {
+        for (int size = 1; size < RANDOM_SIZE; ++size) {
+            ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+            for (int i = 0; i < size; ++i) {
+                long asn = random.nextInt(1000);
+                builder.add(IpResourceRange.range(new Asn(asn), new Asn(asn + random.nextInt(10))));
+                long ipv4 = random.nextInt(1000) + 0x8000_0000L;
+                builder.add(IpRange.range(new Ipv4Address(ipv4), new Ipv4Address(ipv4 + random.nextInt(10))));
+                BigInteger ipv6 = BigInteger.valueOf(random.nextInt(1000)).shiftLeft(63);
+                builder.add(IpRange.range(new Ipv6Address(ipv6), new Ipv6Address(ipv6.add(BigInteger.valueOf(random.nextInt(10)).shiftLeft(63)))));
+            }
+            ImmutableResourceSet resources = builder.build();
+            ResourceSetMatcher subject = resources.compile();
+
+            for (int i = 0; i < 1020; ++i) {
+                assertEquals(resources.contains(new Asn(i)), subject.matchesAsn(i));
+                Ipv4Address ipv4 = new Ipv4Address(i + 0x8000_0000L);
+                assertEquals(resources.contains(ipv4), subject.matches((int) ipv4.longValue()));
+                Ipv6Address ipv6 = new Ipv6Address(BigInteger.valueOf(i).shiftLeft(63));
+                assertEquals(resources.contains(ipv6), subject.matches(ipv6.highBits(), ipv6.lowBits()));
+                Ipv6Address before = new Ipv6Address(ipv6.getValue().subtract(BigInteger.ONE).max(BigInteger.ZERO));
+                assertEquals(resources.contains(before), subject.matches(before));
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static net.ripe.ipresource.ImmutableResourceSet.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceSetOverlapsTest {
+
+    private static final int RANDOM_SIZE = 50;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_find_no_overlaps() {
+        assertTrue(ResourceSetOverlaps.find(Collections.<String, ImmutableResourceSet>emptyMap()).isEmpty());
+
+        Map<String, ImmutableResourceSet> sets = new LinkedHashMap<>();
+        sets.put("a", parse("AS1-AS10, 10.0.0.0/8"));
+        sets.put("b", parse("AS11, 11.0.0.0/8, 2001:db8::/32"));
+        sets.put("c", ImmutableResourceSet.empty());
+        assertTrue(ResourceSetOverlaps.find(sets).isEmpty());
+    }
+
+    @Test
+    public void should_find_overlapping_pairs() {
+        Map<String, ImmutableResourceSet> sets = new LinkedHashMap<>();
+        sets.put("c", parse("AS5, 10.0.0.0/8"));
+        sets.put("a", parse("10.1.0.0/16, 10.3.0.0/16, 2001:db8::/32"));
+        sets.put("b", parse("AS1-AS10, 10.1.2.0/24, 10.2.0.0-10.3.0.255, 2001:db8:1::/48"));
+
+        assertEquals(Arrays.asList(
+            new ResourceSetOverlaps.Overlap<>("c", "a", parse("10.1.0.0/16, 10.3.0.0/16")),
+            new ResourceSetOverlaps.Overlap<>("c", "b", parse("AS5, 10.1.2.0/24, 10.2.0.0-10.3.0.255")),
+            new ResourceSetOverlaps.Overlap<>("a", "b", parse("10.1.2.0/24, 10.3.0.0/24, 2001:db8:1::/48"))
+        ), ResourceSetOverlaps.find(sets));
+    }
+
+    @Test
+    public void should_match_pairwise_intersections() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            Map<Integer, ImmutableResourceSet> sets = new LinkedHashMap<>();
+            int count = 1 + random.nextInt(8);
+            for (int label = 0; label < count; ++label) {
+                sets.put(label, randomSet(8));
+            }
+
+            List<ResourceSetOverlaps.Overlap<Integer>> expected = new ArrayList<>();
+            for (int first = 0; first < sets.size(); ++first) {
+                for (int second = first + 1; second < sets.size(); ++second) {
+                    ImmutableResourceSet intersection = sets.get(first).intersection(sets.get(second));
+                    if (!intersection.isEmpty()) {
+                        expected.add(new ResourceSetOverlaps.Overlap<>(first, second, intersection));
+                    }
+                }
+            }
+
+            assertEquals(expected, ResourceSetOverlaps.find(sets));
+        }
+    }
+
+    private ImmutableResourceSet randomSet(int size) {
+        return Stream.generate(this::randomResourceRange)
+            .limit(random.nextInt(size + 1))
+            .collect(ImmutableResourceSet.collector());
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        BigInteger start = BigInteger.valueOf(random.nextInt(1 << 16));
+        BigInteger end = start.add(BigInteger.valueOf(random.nextInt(1 << 12)));
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
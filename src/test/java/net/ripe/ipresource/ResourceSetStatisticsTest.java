@@ -0,0 +1,133 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class ResourceSetStatisticsTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_compute_fragmentation_statistics() {
+        ResourceSetStatistics subject = ResourceSetStatistics.of(ImmutableResourceSet.parse("AS1-AS10, AS20, 10.0.0.1-10.0.0.8, 192.168.0.0/16, 2001:db8::/32, ::/0"));
+
+        assertEquals(2, subject.getRangeCount(IpResourceType.ASN));
+        assertEquals(2, subject.getRangeCount(IpResourceType.IPv4));
+        assertEquals(1, subject.getRangeCount(IpResourceType.IPv6));
+        assertEquals(5, subject.getRangeCount());
+        assertEquals(BigInteger.TEN, subject.getLargestRangeSize(IpResourceType.ASN));
+        assertEquals(BigInteger.valueOf(1 << 16), subject.getLargestRangeSize(IpResourceType.IPv4));
+        assertEquals(BigInteger.ONE.shiftLeft(128), subject.getLargestRangeSize(IpResourceType.IPv6));
+
+        assertEquals(1, subject.getPrefixCount(IpResourceType.IPv4, 16));
+        assertEquals(2, subject.getPrefixCount(IpResourceType.IPv4, 32));
+        assertEquals(1, subject.getPrefixCount(IpResourceType.IPv4, 31));
+        assertEquals(1, subject.getPrefixCount(IpResourceType.IPv4, 30));
+        assertEquals(1, subject.getPrefixCount(IpResourceType.IPv6, 0));
+        assertEquals(0, subject.getPrefixCount(IpResourceType.IPv6, 32));
+
+        assertThrows(IllegalArgumentException.class, () -> subject.getPrefixCount(IpResourceType.ASN, 0));
+        assertThrows(IllegalArgumentException.class, () -> subject.getPrefixCount(IpResourceType.IPv4, 33));
+    }
+
+    @Test
+    public void should_normalize_resources_first() {
+        ResourceSetStatistics subject = ResourceSetStatistics.of(Arrays.asList(
+            IpResource.parse("10.0.0.128/25"),
+            IpResource.parse("10.0.0.0/25"),
+            IpResource.parse("10.0.0.64/26"),
+            IpResource.parse("AS2"),
+            IpResource.parse("AS1")));
+
+        assertEquals(ResourceSetStatistics.of(ImmutableResourceSet.parse("AS1-AS2, 10.0.0.0/24")), subject);
+        assertEquals(1, subject.getRangeCount(IpResourceType.IPv4));
+        assertEquals(1, subject.getPrefixCount(IpResourceType.IPv4, 24));
+        assertEquals(0, subject.getPrefixCount(IpResourceType.IPv4, 25));
+        assertEquals(BigInteger.valueOf(2), subject.getLargestRangeSize(IpResourceType.ASN));
+    }
+
+    @Test
+    public void should_sum_statistics() {
+        ResourceSetStatistics a = ResourceSetStatistics.of(ImmutableResourceSet.parse("AS1-AS10, 10.0.0.0/8, 2001:db8::1"));
+        ResourceSetStatistics b = ResourceSetStatistics.of(ImmutableResourceSet.parse("AS1, 11.0.0.0/16, 2001:db8::/32"));
+
+        ResourceSetStatistics sum = a.add(b);
+
+        assertEquals(sum, b.add(a));
+        assertEquals(a, a.add(ResourceSetStatistics.empty()));
+        assertEquals(a, ResourceSetStatistics.empty().add(a));
+        assertEquals(6, sum.getRangeCount());
+        assertEquals(BigInteger.TEN, sum.getLargestRangeSize(IpResourceType.ASN));
+        assertEquals(BigInteger.ONE.shiftLeft(96), sum.getLargestRangeSize(IpResourceType.IPv6));
+        assertEquals(1, sum.getPrefixCount(IpResourceType.IPv6, 128));
+        assertEquals(BigInteger.ONE, a.getLargestRangeSize(IpResourceType.IPv6));
+        assertEquals(BigInteger.ZERO, ResourceSetStatistics.empty().getLargestRangeSize(IpResourceType.IPv6));
+    }
+
+    @Test
+    public void should_match_split_to_prefixes() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = Stream.generate(this::randomResourceRange).limit(random.nextInt(10)).collect(ImmutableResourceSet.collector());
+            ResourceSetStatistics subject = ResourceSetStatistics.of(resources);
+
+            long[] ipv4 = new long[33];
+            long[] ipv6 = new long[129];
+            for (IpResource resource : resources) {
+                if (resource.getType() != IpResourceType.ASN) {
+                    for (IpRange prefix : IpRange.range((IpAddress) resource.getStart(), (IpAddress) resource.getEnd()).splitToPrefixes()) {
+                        ++(resource.getType() == IpResourceType.IPv4 ? ipv4 : ipv6)[prefix.getPrefixLength()];
+                    }
+                }
+            }
+
+            assertArrayEquals(ipv4, subject.getPrefixLengthHistogram(IpResourceType.IPv4));
+            assertArrayEquals(ipv6, subject.getPrefixLengthHistogram(IpResourceType.IPv6));
+        }
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        BigInteger start = new BigInteger(type.getBitSize(), random);
+        BigInteger end = start.add(new BigInteger(Math.min(type.getBitSize() / 2, 40), random)).min(type.getMaximum().getValue());
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static net.ripe.ipresource.IpResource.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceSubSetTest {
+
+    private static final int RANDOM_SIZE = 100;
+
+    private final Random random = new Random();
+
+    @Test
+    public void should_clip_resources_to_bound() {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1-AS100, AS64500-AS64600, 10.0.0.0/8, 2001:db8::/31, 2001:db9:1::/48, 2001:dba::/32");
+
+        ResourceSubSet subject = resources.subSet(parse("2001:db9::/32"));
+
+        assertEquals("2001:db9::/32", subject.toString());
+        assertEquals("AS64512-AS64600", resources.subSet(parse("AS64512-AS65534")).toString());
+        assertEquals("AS1-AS100, AS64500-AS64600", resources.subSet(parse("AS0-AS4294967295")).toString());
+        assertEquals("10.0.0.0", resources.subSet(parse("9.255.255.0-10.0.0.0")).toString());
+        assertTrue(resources.subSet(parse("11.0.0.0/8")).isEmpty());
+
+        assertTrue(subject.contains(parse("2001:db9:1::/48")));
+        assertFalse(subject.contains(parse("2001:db8::/48")));
+        assertTrue(subject.intersects(parse("2001:db8::/30")));
+        assertFalse(subject.intersects(parse("10.0.0.0/8")));
+        assertEquals(ImmutableResourceSet.parse("2001:db9::/32"), subject.toImmutableResourceSet());
+    }
+
+    @Test
+    public void should_reflect_changes_of_mutable_sets() {
+        IpResourceSet resources = IpResourceSet.parse("10.0.0.0/8");
+        ResourceSubSet subject = resources.subSet(parse("10.0.0.0/16"));
+        resources.freeze();
+
+        resources.remove(parse("10.0.1.0/24"));
+
+        assertEquals("10.0.0.0/24, 10.0.2.0-10.0.255.255", subject.toString());
+    }
+
+    @Test
+    public void should_match_intersection() {
+        for (int i = 0; i < RANDOM_SIZE; ++i) {
+            ImmutableResourceSet resources = Stream.generate(this::randomResourceRange).limit(random.nextInt(10)).collect(ImmutableResourceSet.collector());
+            IpResourceRange bound = randomResourceRange();
+
+            assertEquals(resources.intersection(ImmutableResourceSet.of(bound)), resources.subSet(bound).toImmutableResourceSet());
+        }
+    }
+
+    private IpResourceRange randomResourceRange() {
+        IpResourceType type = IpResourceType.values()[random.nextInt(IpResourceType.values().length)];
+        BigInteger start = BigInteger.valueOf(random.nextInt(1 << 16));
+        BigInteger end = start.add(BigInteger.valueOf(random.nextInt(1 << 14)));
+        return IpResourceRange.range(type.fromBigInteger(start), type.fromBigInteger(end));
+    }
+}
@@ -29,14 +29,22 @@
  */
 package net.ripe.ipresource;
 
+import net.ripe.ipresource.etree.IpResourceIntervalStrategy;
+import net.ripe.ipresource.etree.NestedIntervalMap;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class SerializationTest {
 
@@ -58,4 +66,101 @@ public class SerializationTest {
         ObjectInputStream ois = new ObjectInputStream(getClass().getResourceAsStream("/serialized-v1.bin"));
         assertEquals(RESOURCES, ois.readObject());
     }
+
+    @Test
+    public void deserialize_v2() throws Exception {
+        ObjectInputStream ois = new ObjectInputStream(getClass().getResourceAsStream("/serialized-v2.bin"));
+        assertEquals(RESOURCES, ois.readObject());
+    }
+
+    @Test
+    public void deserialize_immutable_v1() throws Exception {
+        ObjectInputStream ois = new ObjectInputStream(getClass().getResourceAsStream("/serialized-immutable-v1.bin"));
+        assertEquals(ImmutableResourceSet.of(RESOURCES), ois.readObject());
+    }
+
+    @Test
+    public void serialize_and_deserialize_immutable() throws Exception {
+        ImmutableResourceSet resources = ImmutableResourceSet.parse("AS1, AS3-AS100, AS4294967295, 0.0.0.0, 10/8, 255.255.255.255, ::/128, ffff::/16, ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff");
+        assertEquals(resources, roundTrip(resources));
+        assertEquals(resources.toString(), roundTrip(resources).toString());
+        assertSame(ImmutableResourceSet.empty(), roundTrip(ImmutableResourceSet.empty()));
+        assertEquals(new IpResourceSet(resources), roundTrip(new IpResourceSet(resources)));
+        assertEquals(new IpResourceSet(), roundTrip(new IpResourceSet()));
+    }
+
+    @Test
+    public void serialized_form_should_be_smaller_than_object_graph() throws Exception {
+        ImmutableResourceSet.Builder builder = new ImmutableResourceSet.Builder();
+        for (int i = 0; i < 1000; ++i) {
+            builder.add(IpRange.prefix(new Ipv4Address(i * 512L), 24));
+            builder.add(new Asn(i * 2L));
+        }
+        ImmutableResourceSet resources = builder.build();
+
+        int proxySize = serialize(resources).length;
+        int graphSize = serialize(new TreeMap<>(resources.resourcesByEndPoint)).length;
+        assertTrue("proxy size " + proxySize + " should be much smaller than " + graphSize, proxySize * 2 < graphSize);
+        assertEquals(resources, roundTrip(resources));
+    }
+
+    @Test
+    public void serialize_and_deserialize_subclass_using_default_form() throws Exception {
+        IpResourceSet resources = new IpResourceSubclass(RESOURCES);
+        assertEquals(RESOURCES, roundTrip(resources));
+        assertEquals(resources.getClass(), roundTrip(resources).getClass());
+    }
+
+    @Test
+    public void serialize_and_deserialize_nested_interval_map() throws Exception {
+        NestedIntervalMap<IpResource, String> map = new NestedIntervalMap<>(IpResourceIntervalStrategy.getInstance());
+        map.put(IpResource.parse("10/8"), "10/8");
+        map.put(IpResource.parse("10.1/16"), "10.1/16");
+        map.put(IpResource.parse("10.1.1/24"), "10.1.1/24");
+        map.put(IpResource.parse("10.2/16"), "10.2/16");
+        map.put(IpResource.parse("11.0.0.1"), "11.0.0.1");
+        map.put(IpResource.parse("AS1-AS10"), "AS1-AS10");
+        map.put(IpResource.parse("::/0"), "::/0");
+
+        NestedIntervalMap<IpResource, String> copy = roundTrip(map);
+
+        assertEquals(map, copy);
+        assertEquals("10.1/16", copy.findFirstLessSpecific(IpResource.parse("10.1.1/24")));
+        assertEquals(map.findAllMoreSpecific(IpResource.parse("10/8")), copy.findAllMoreSpecific(IpResource.parse("10/8")));
+        assertEquals(Collections.singletonList("AS1-AS10"), copy.findExactAndAllLessSpecific(IpResource.parse("AS5")));
+
+        copy.put(IpResource.parse("10.3/16"), "10.3/16");
+        copy.remove(IpResource.parse("10.1/16"));
+        assertEquals("10/8", copy.findFirstLessSpecific(IpResource.parse("10.1.1/24")));
+        assertEquals("10.3/16", copy.findFirstLessSpecific(IpResource.parse("10.3.1/24")));
+
+        NestedIntervalMap<IpResource, String> empty = new NestedIntervalMap<>(IpResourceIntervalStrategy.getInstance());
+        NestedIntervalMap<IpResource, String> emptyCopy = roundTrip(empty);
+        assertTrue(emptyCopy.isEmpty());
+        emptyCopy.put(IpResource.parse("10/8"), "10/8");
+        assertEquals("10/8", emptyCopy.findExact(IpResource.parse("10/8")));
+    }
+
+    private static class IpResourceSubclass extends IpResourceSet {
+        private static final long serialVersionUID = 1L;
+
+        IpResourceSubclass(IpResourceSet resources) {
+            super(resources);
+        }
+    }
+
+    private static byte[] serialize(Serializable object) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(object);
+        }
+        return baos.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Serializable> T roundTrip(T object) throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialize(object)))) {
+            return (T) ois.readObject();
+        }
+    }
 }
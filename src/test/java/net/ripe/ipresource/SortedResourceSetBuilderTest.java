@@ -0,0 +1,84 @@
+/**
+ * The BSD License
+ *
+ * Copyright (c) 2010-2022 RIPE NCC
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *   - Redistributions of source code must retain the above copyright notice,
+ *     this list of conditions and the following disclaimer.
+ *   - Redistributions in binary form must reproduce the above copyright notice,
+ *     this list of conditions and the following disclaimer in the documentation
+ *     and/or other materials provided with the distribution.
+ *   - Neither the name of the RIPE NCC nor the names of its contributors may be
+ *     used to endorse or promote products derived from this software without
+ *     specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.ripe.ipresource;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SortedResourceSetBuilderTest {
+
+    @Test
+    public void should_merge_resources_appended_in_ascending_order() {
+        SortedResourceSetBuilder builder = new SortedResourceSetBuilder()
+            .append(IpResource.parse("10.0.0.0/25"))
+            .append(IpResource.parse("10.0.0.64/26"))
+            .append(IpResource.parse("10.0.0.128/25"))
+            .append(IpResource.parse("11.0.0.0/8"));
+
+        assertEquals(ImmutableResourceSet.parse("10.0.0.0/24, 11.0.0.0/8"), builder.build());
+        assertThrows(IllegalStateException.class, builder::build);
+        assertThrows(IllegalArgumentException.class, () -> new SortedResourceSetBuilder().append(IpResource.parse("11.0.0.0/8")).append(IpResource.parse("10.0.0.0/8")));
+    }
+
+    @Test
+    public void sorted_resources_should_implement_sorted_map_views() {
+        List<IpResource> resources = Arrays.asList(IpResource.parse("AS1-AS10"), IpResource.parse("AS20"), IpResource.parse("10.0.0.0/8"));
+        SortedMap<UniqueIpResource, IpResource> subject = new SortedResourceSetBuilder.SortedResources(resources);
+        TreeMap<UniqueIpResource, IpResource> expected = new TreeMap<>(subject);
+        UniqueIpResource as10 = Asn.parse("AS10");
+        UniqueIpResource as15 = Asn.parse("AS15");
+
+        assertEquals(expected, subject);
+        assertEquals(as10, subject.firstKey());
+        assertEquals(expected.lastKey(), subject.lastKey());
+        assertEquals(expected.headMap(as15), subject.headMap(as15));
+        assertEquals(expected.headMap(as10), subject.headMap(as10));
+        assertEquals(expected.tailMap(as10), subject.tailMap(as10));
+        assertEquals(expected.tailMap(as15), subject.tailMap(as15));
+        assertEquals(expected.subMap(as10, as15), subject.subMap(as10, as15));
+        assertEquals(expected.subMap(as15, expected.lastKey()), subject.subMap(as15, subject.lastKey()));
+        assertTrue(subject.subMap(as15, as15).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> subject.subMap(as15, as10));
+
+        SortedMap<UniqueIpResource, IpResource> empty = new SortedResourceSetBuilder.SortedResources(Collections.emptyList());
+        assertThrows(NoSuchElementException.class, empty::firstKey);
+        assertThrows(NoSuchElementException.class, empty::lastKey);
+    }
+}
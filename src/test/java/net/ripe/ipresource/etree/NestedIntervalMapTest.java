@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import net.ripe.ipresource.IpResource;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -310,4 +311,49 @@ public class NestedIntervalMapTest {
 
         assertThat(subject.findExact(overlap), nullValue());
     }
+
+    @Test
+    public void prefilter_should_skip_lookups_of_disjoint_keys() {
+        NestedIntervalMap<IpResource, String> map = NestedIntervalMap.withPrefilter(IpResourceIntervalStrategy.<IpResource>getInstance());
+        map.put(IpResource.parse("10.0.0.0/8"), "10/8");
+        map.put(IpResource.parse("10.1.0.0/16"), "10.1/16");
+
+        assertThat(map.findExactOrFirstLessSpecific(IpResource.parse("10.1.2.0/24")), is("10.1/16"));
+        assertThat(map.findExact(IpResource.parse("11.0.0.0/8")), nullValue());
+        assertThat(map.findAllMoreSpecific(IpResource.parse("0.0.0.0/0")), contains("10/8", "10.1/16"));
+        assertThat(map.findAllLessSpecific(IpResource.parse("2001:db8::/32")), empty());
+        assertEquals(4, map.getPrefilter().getQueryCount());
+        assertEquals(2, map.getPrefilter().getRejectionCount());
+
+        map.put(IpResource.parse("2001:db8::/32"), "2001:db8::/32");
+        assertThat(map.findExact(IpResource.parse("2001:db8::/32")), is("2001:db8::/32"));
+
+        map.clear();
+        assertThat(map.findExact(IpResource.parse("2001:db8::/32")), nullValue());
+        assertEquals(1, map.getPrefilter().getRejectionCount());
+
+        assertNull(subject.getPrefilter());
+    }
+
+    @Test
+    public void prefilter_should_be_rebuilt_as_the_map_grows() {
+        NestedIntervalMap<IpResource, String> map = NestedIntervalMap.withPrefilter(IpResourceIntervalStrategy.<IpResource>getInstance());
+        map.put(IpResource.parse("2001:db8::/32"), "2001:db8::/32");
+        assertThat(map.findExact(IpResource.parse("2001:db9::/32")), nullValue());
+        IntervalPrefilter<IpResource> prefilter = map.getPrefilter();
+
+        map.put(IpResource.parse("2001:db9::/32"), "2001:db9::/32");
+        assertSame(prefilter, map.getPrefilter());
+        assertThat(map.findExact(IpResource.parse("2001:db9::/32")), is("2001:db9::/32"));
+
+        map.put(IpResource.parse("2001:dba::/32"), "2001:dba::/32");
+        assertThat(map.findExact(IpResource.parse("2001:dba::/32")), is("2001:dba::/32"));
+        assertNotSame(prefilter, map.getPrefilter());
+        assertEquals(1, map.getPrefilter().getQueryCount());
+    }
+
+    @Test
+    public void prefilter_should_require_support_from_the_strategy() {
+        assertThrows(UnsupportedOperationException.class, () -> NestedIntervalMap.withPrefilter(TestInterval.STRATEGY));
+    }
 }